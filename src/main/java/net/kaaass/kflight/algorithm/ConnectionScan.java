@@ -0,0 +1,279 @@
+package net.kaaass.kflight.algorithm;
+
+import net.kaaass.kflight.data.FlightAdjacency;
+import net.kaaass.kflight.data.entry.EntryFlight;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * 多目标连接扫描（Connection Scan）路径规划
+ * <p>
+ * 按转机次数逐轮扩展：每轮对上一轮新得到的标签，在所在城市的出港航班表中二分查找第一个
+ * 满足最短转机时间的航班并向后扫描。每个城市维护互不支配的标签集合，标签记录首班起飞时间、
+ * 到达时间、总票价与转机次数，最终得到 (票价, 总耗时, 转机次数) 意义下的 Pareto 最优行程
+ * <p>
+ * 同一轮中各标签的扩展、各城市标签集合的更新互不依赖，标签较多时以 ForkJoin 任务并行，
+ * 结果按固定顺序合并，与串行执行一致
+ */
+public class ConnectionScan {
+
+    /**
+     * 最短转机时间，以秒计算
+     */
+    public final static long MIN_TRANSFER_SECONDS = 40 * 60;
+
+    /**
+     * 单个任务处理的标签数，超过则拆分并行
+     */
+    private final static int PARALLEL_THRESHOLD = 256;
+
+    /**
+     * 行程标签，以链表记录已乘坐航班
+     */
+    private final static class Label {
+        final long departure;
+        final long arrival;
+        final float cost;
+        final int transfers;
+        final int city;
+        final EntryFlight flight;
+        final Label prev;
+
+        Label(long departure, long arrival, float cost, int transfers, int city, EntryFlight flight, Label prev) {
+            this.departure = departure;
+            this.arrival = arrival;
+            this.cost = cost;
+            this.transfers = transfers;
+            this.city = city;
+            this.flight = flight;
+            this.prev = prev;
+        }
+
+        /**
+         * 中间城市的支配关系：到达不晚、出发不早、票价与转机均不多
+         */
+        boolean dominates(Label o) {
+            return arrival <= o.arrival && departure >= o.departure &&
+                    cost <= o.cost && transfers <= o.transfers;
+        }
+
+        /**
+         * 终点的支配关系：票价、总耗时与转机均不多
+         */
+        boolean dominatesJourney(Label o) {
+            return cost <= o.cost && arrival - departure <= o.arrival - o.departure &&
+                    transfers <= o.transfers;
+        }
+    }
+
+    /**
+     * 规划从出发城市至目的城市的 Pareto 最优行程
+     *
+     * @param outbound     由城市编号获得当日出港航班表
+     * @param usable       可乘坐的航班
+     * @param from         出发城市编号
+     * @param to           目的城市编号
+     * @param cityBound    城市编号上界
+     * @param maxTransfers 最多转机次数
+     * @return 行程列表，每一行程为依次乘坐的航班
+     */
+    public static List<List<EntryFlight>> route(IntFunction<FlightAdjacency.Slot> outbound,
+                                                Predicate<EntryFlight> usable, int from, int to,
+                                                int cityBound, int maxTransfers) {
+        var result = new ArrayList<List<EntryFlight>>();
+        route(outbound, usable, from, to, cityBound, maxTransfers, result::add);
+        return result;
+    }
+
+    /**
+     * 规划从出发城市至目的城市的 Pareto 最优行程，逐个交由 consumer 处理
+     */
+    public static void route(IntFunction<FlightAdjacency.Slot> outbound, Predicate<EntryFlight> usable,
+                             int from, int to, int cityBound, int maxTransfers,
+                             Consumer<List<EntryFlight>> consumer) {
+        if (from == to || from < 0 || to < 0 || from >= cityBound || to >= cityBound)
+            return;
+        var bags = new ArrayList<List<Label>>(Collections.nCopies(cityBound, null));
+        // 首班航班
+        var first = outbound.apply(from);
+        List<Label> frontier = new ArrayList<>();
+        for (int i = 0; i < first.size(); i++) {
+            int v = first.toAt(i);
+            var flight = first.flightAt(i);
+            if (v == from || v < 0 || v >= cityBound || !usable.test(flight))
+                continue;
+            frontier.add(new Label(first.departureAt(i), first.landingAt(i), flight.getTicketPrice(),
+                    0, v, flight, null));
+        }
+        frontier = offerAll(bags, frontier);
+        // 逐轮转机，新标签不会支配转机次数更少的标签，因此只需扩展上一轮留下的标签
+        for (int round = 1; round <= maxTransfers && !frontier.isEmpty(); round++) {
+            var candidates = ForkJoinPool.commonPool()
+                    .invoke(new ExpandTask(outbound, usable, frontier, 0, frontier.size(), from, to, cityBound));
+            frontier = offerAll(bags, candidates);
+        }
+        // 终点按行程目标再次筛选
+        var bag = bags.get(to);
+        if (bag == null)
+            return;
+        var journeys = new ArrayList<Label>();
+        for (var label : bag) {
+            if (journeys.stream().anyMatch(other -> other.dominatesJourney(label)))
+                continue;
+            journeys.removeIf(label::dominatesJourney);
+            journeys.add(label);
+        }
+        for (var label : journeys)
+            consumer.accept(journeyOf(label));
+    }
+
+    /**
+     * 扩展 [lo, hi) 内标签的任务，结果按标签顺序排列
+     */
+    private final static class ExpandTask extends RecursiveTask<List<Label>> {
+
+        private static final long serialVersionUID = 1L;
+
+        final IntFunction<FlightAdjacency.Slot> outbound;
+        final Predicate<EntryFlight> usable;
+        final List<Label> labels;
+        final int lo;
+        final int hi;
+        final int from;
+        final int to;
+        final int cityBound;
+
+        ExpandTask(IntFunction<FlightAdjacency.Slot> outbound, Predicate<EntryFlight> usable,
+                   List<Label> labels, int lo, int hi, int from, int to, int cityBound) {
+            this.outbound = outbound;
+            this.usable = usable;
+            this.labels = labels;
+            this.lo = lo;
+            this.hi = hi;
+            this.from = from;
+            this.to = to;
+            this.cityBound = cityBound;
+        }
+
+        @Override
+        protected List<Label> compute() {
+            if (hi - lo <= PARALLEL_THRESHOLD) {
+                var ret = new ArrayList<Label>();
+                for (int i = lo; i < hi; i++) {
+                    var label = labels.get(i);
+                    // 到达目的地后不再转机
+                    if (label.city != to)
+                        expand(outbound, usable, label, from, cityBound, ret);
+                }
+                return ret;
+            }
+            int mid = (lo + hi) >>> 1;
+            var left = new ExpandTask(outbound, usable, labels, lo, mid, from, to, cityBound);
+            var right = new ExpandTask(outbound, usable, labels, mid, hi, from, to, cityBound);
+            right.fork();
+            var ret = left.compute();
+            ret.addAll(right.join());
+            return ret;
+        }
+    }
+
+    /**
+     * 由标签出发转机一次，候选标签加入 out
+     * <p>
+     * 出港航班按起飞时间升序，二分查找第一个可衔接的航班后向后扫描
+     */
+    private static void expand(IntFunction<FlightAdjacency.Slot> outbound, Predicate<EntryFlight> usable,
+                               Label label, int from, int cityBound, List<Label> out) {
+        var slot = outbound.apply(label.city);
+        for (int i = slot.lowerBound(label.arrival + MIN_TRANSFER_SECONDS); i < slot.size(); i++) {
+            int v = slot.toAt(i);
+            var flight = slot.flightAt(i);
+            // 不返回出发地
+            if (v == from || v == label.city || v < 0 || v >= cityBound || !usable.test(flight))
+                continue;
+            out.add(new Label(label.departure, slot.landingAt(i), label.cost + flight.getTicketPrice(),
+                    label.transfers + 1, v, flight, label));
+        }
+    }
+
+    /**
+     * 将候选标签加入所在城市的标签集合
+     * <p>
+     * 候选按城市分组，各组依原顺序加入，组间互不影响，候选较多时并行
+     *
+     * @return 加入后仍未被支配的候选标签，按城市编号、加入顺序排列
+     */
+    private static List<Label> offerAll(List<List<Label>> bags, List<Label> candidates) {
+        var groups = new TreeMap<Integer, List<Label>>();
+        for (var label : candidates)
+            groups.computeIfAbsent(label.city, city -> new ArrayList<>()).add(label);
+        var tasks = new ArrayList<ForkJoinTask<List<Label>>>(groups.size());
+        for (var entry : groups.entrySet()) {
+            int city = entry.getKey();
+            if (bags.get(city) == null)
+                bags.set(city, new ArrayList<>());
+            var bag = bags.get(city);
+            var group = entry.getValue();
+            tasks.add(ForkJoinTask.adapt(() -> offerGroup(bag, group)));
+        }
+        if (candidates.size() > PARALLEL_THRESHOLD)
+            ForkJoinTask.invokeAll(tasks);
+        else
+            tasks.forEach(ForkJoinTask::invoke);
+        var accepted = new ArrayList<Label>();
+        for (var task : tasks)
+            accepted.addAll(task.join());
+        return accepted;
+    }
+
+    /**
+     * 将同一城市的候选标签依次加入标签集合
+     *
+     * @return 加入后仍未被支配的候选标签
+     */
+    private static List<Label> offerGroup(List<Label> bag, List<Label> group) {
+        var accepted = new ArrayList<Label>();
+        for (var label : group) {
+            if (offer(bag, label))
+                accepted.add(label);
+        }
+        // 后加入的标签可能支配先加入的标签
+        accepted.removeIf(label -> !bag.contains(label));
+        return accepted;
+    }
+
+    /**
+     * 将标签加入城市的标签集合，若被支配则丢弃，并移除被其支配的标签
+     *
+     * @return 是否加入
+     */
+    private static boolean offer(List<Label> bag, Label label) {
+        for (var other : bag) {
+            if (other.dominates(label))
+                return false;
+        }
+        bag.removeIf(label::dominates);
+        bag.add(label);
+        return true;
+    }
+
+    /**
+     * 由标签还原航班序列
+     */
+    private static List<EntryFlight> journeyOf(Label label) {
+        var ret = new ArrayList<EntryFlight>();
+        for (var cur = label; cur != null; cur = cur.prev)
+            ret.add(cur.flight);
+        Collections.reverse(ret);
+        return ret;
+    }
+}
@@ -1,51 +1,51 @@
 package net.kaaass.kflight.algorithm;
 
 import net.kaaass.kflight.data.structure.HashSet;
+import net.kaaass.kflight.data.structure.IntHashSet;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 /**
  * 集合求交集
+ * <p>
+ * 哈希集合以较小集合探测较大集合，O(min(m, n))；稠密整数（如城市编号）使用位集按字求与
  */
 public class SetIntersect {
 
+    /**
+     * 遍历两集合的公共元素，不产生中间结构
+     */
+    public static <S> void forEachCommon(HashSet<S> setA, HashSet<S> setB, Consumer<S> consumer) {
+        var small = setA.size() <= setB.size() ? setA : setB;
+        var large = small == setA ? setB : setA;
+        small.forEach(el -> {
+            if (large.inSet(el))
+                consumer.accept(el);
+        });
+    }
+
+    /**
+     * 遍历两整数集合的公共元素，不产生中间结构
+     */
+    public static void forEachCommon(IntHashSet setA, IntHashSet setB, IntConsumer consumer) {
+        var small = setA.size() <= setB.size() ? setA : setB;
+        var large = small == setA ? setB : setA;
+        small.forEach(el -> {
+            if (large.inSet(el))
+                consumer.accept(el);
+        });
+    }
+
     /**
      * 求集合交集，返回元素列表
      */
     public static <S> List<S> intersectList(HashSet<S> setA, HashSet<S> setB) {
-        var a = setA.toNodeList();
-        var b = setB.toNodeList();
-        int lf = 0, rt = 0, lfEnd = 0, rtEnd = 0;
         var ret = new ArrayList<S>();
-        while (lf < a.size() && rt < b.size()) {
-            // lfEnd 移动
-            int lfCur = a.get(lf).getKey();
-            while (lfEnd < a.size() && a.get(lfEnd).getKey() <= lfCur)
-                lfEnd++;
-            // rtEnd 移动
-            int rtCur = b.get(rt).getKey();
-            while (rtEnd < b.size() && b.get(rtEnd).getKey() <= rtCur)
-                rtEnd++;
-            // 比较并移动
-            if (lfCur < rtCur) {
-                lf = lfEnd;
-            } else if (lfCur > rtCur) {
-                rt = rtEnd;
-            } else {
-                // 比较元素值
-                for (var i = lf; i < lfEnd; i++) {
-                    for (var j = rt; j < rtEnd; j++) {
-                        if (a.get(i).getValue().equals(b.get(j).getValue())) {
-                            ret.add(a.get(i).getValue());
-                            break; // 有也是重复
-                        }
-                    }
-                }
-                lf = lfEnd;
-                rt = rtEnd;
-            }
-        }
+        forEachCommon(setA, setB, ret::add);
         return ret;
     }
 
@@ -53,8 +53,26 @@ public class SetIntersect {
      * 求集合交集
      */
     public static <S> HashSet<S> intersect(HashSet<S> setA, HashSet<S> setB) {
-        var ret = new HashSet<S>();
-        intersectList(setA, setB).forEach(ret::insert);
+        var ret = new HashSet<S>(Math.min(setA.size(), setB.size()));
+        forEachCommon(setA, setB, ret::insert);
+        return ret;
+    }
+
+    /**
+     * 求整数集合交集
+     */
+    public static IntHashSet intersect(IntHashSet setA, IntHashSet setB) {
+        var ret = new IntHashSet(Math.min(setA.size(), setB.size()));
+        forEachCommon(setA, setB, ret::insert);
+        return ret;
+    }
+
+    /**
+     * 求位集交集，不修改参数
+     */
+    public static BitSet intersect(BitSet setA, BitSet setB) {
+        var ret = (BitSet) setA.clone();
+        ret.and(setB);
         return ret;
     }
 }
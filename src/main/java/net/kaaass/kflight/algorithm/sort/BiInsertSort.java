@@ -28,11 +28,11 @@ public class BiInsertSort {
         for (var i = cur; cur < right; i = ++cur) {
             cur++;
             S fst = arr[i], snd = arr[cur];
-            if (cmp.compare(fst, snd) < 0) {
+            if (cmp.compare(fst, snd) <= 0) {
                 snd = fst;
                 fst = arr[cur];
             }
-            // 此时 i, cur 分别指向待插入元素，并且 fst > snd
+            // 此时 i, cur 分别指向待插入元素，并且 fst >= snd，相等时 fst 为靠后的元素以保持稳定
             // 先插入较大元素 fst
             while (--i >= left && cmp.compare(fst, arr[i]) < 0) {
                 arr[i + 2] = arr[i]; // 偏移为 2 保证元素位置比 fst, snd 都大
@@ -0,0 +1,68 @@
+package net.kaaass.kflight.conf;
+
+import lombok.extern.slf4j.Slf4j;
+import net.kaaass.kflight.service.PersistService;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动时由快照与预写日志恢复数据，定期写入快照，关闭时写入剩余记录
+ * <p>
+ * 通过系统属性 kflight.snapshot.path、kflight.wal.path 指定文件，未指定时不持久化；
+ * kflight.snapshot.interval 为写入快照的间隔秒数，为 0 时不定期写入
+ */
+@Slf4j
+@Component
+public class PersistConfig {
+
+    private final static String SNAPSHOT_PATH = System.getProperty("kflight.snapshot.path");
+
+    private final static String WAL_PATH = System.getProperty("kflight.wal.path");
+
+    private final static long SNAPSHOT_INTERVAL = Long.getLong("kflight.snapshot.interval", 3600);
+
+    private ScheduledExecutorService scheduler = null;
+
+    @PostConstruct
+    public void open() throws IOException {
+        var snapshot = pathOf(SNAPSHOT_PATH);
+        var wal = pathOf(WAL_PATH);
+        if (snapshot == null && wal == null)
+            return;
+        PersistService.open(snapshot, wal);
+        if (snapshot != null && SNAPSHOT_INTERVAL > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "kflight-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::checkpoint, SNAPSHOT_INTERVAL, SNAPSHOT_INTERVAL, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        PersistService.close();
+    }
+
+    private void checkpoint() {
+        try {
+            PersistService.checkpoint();
+        } catch (IOException | RuntimeException e) {
+            log.error("写入快照失败", e);
+        }
+    }
+
+    private static Path pathOf(String path) {
+        return path == null || path.isBlank() ? null : Path.of(path);
+    }
+}
@@ -0,0 +1,19 @@
+package net.kaaass.kflight.conf;
+
+import net.kaaass.kflight.service.PlanService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * 方案缓存统计，位于 /actuator/plancache
+ */
+@Component
+@Endpoint(id = "plancache")
+public class PlanCacheEndpoint {
+
+    @ReadOperation
+    public PlanService.CacheStats stats() {
+        return PlanService.getCacheStats();
+    }
+}
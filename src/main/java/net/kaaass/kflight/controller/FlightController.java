@@ -1,11 +1,13 @@
 package net.kaaass.kflight.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import lombok.extern.slf4j.Slf4j;
 import net.kaaass.kflight.data.DataLoader;
 import net.kaaass.kflight.data.entry.EntryFlight;
 import net.kaaass.kflight.exception.BadRequestException;
 import net.kaaass.kflight.exception.NotFoundException;
 import net.kaaass.kflight.service.FlightService;
+import net.kaaass.kflight.service.PersistService;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
@@ -26,6 +28,7 @@ public class FlightController {
     @PostMapping("/")
     EntryFlight addFlight(@RequestBody EntryFlight flight) {
         FlightService.addEntry(flight);
+        PersistService.sync();
         return flight;
     }
 
@@ -44,6 +47,7 @@ public class FlightController {
     @PostMapping("/id/{id}/")
     EntryFlight editFlight(@PathVariable int id, @RequestBody EntryFlight flight) throws NotFoundException {
         FlightService.updateById(id, flight);
+        PersistService.sync();
         return flight;
     }
 
@@ -52,12 +56,16 @@ public class FlightController {
         var flight = FlightService.getById(id)
                 .orElseThrow(() -> new NotFoundException("未找到此ID的航班信息！"));
         FlightService.removeEntry(flight);
+        PersistService.sync();
     }
 
     @GetMapping("/import/")
     void getFlightById(@RequestParam String filepath) throws BadRequestException {
         try {
             DataLoader.loadFlightFromJsonFile(filepath);
+        } catch (JsonProcessingException e) {
+            log.warn("解析文件失败", e);
+            throw new BadRequestException("文件格式错误！请检查航班数据。");
         } catch (IOException e) {
             log.warn("打开文件失败", e);
             throw new BadRequestException("文件打开失败！请检查文件是否存在。");
@@ -67,11 +75,15 @@ public class FlightController {
     @PostMapping("/id/{id}/delay/")
     EntryFlight publishDelayById(@PathVariable int id,
                                  @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime delayTo) throws NotFoundException {
-        return FlightService.changeState(id, EntryFlight.State.DELAYED, delayTo);
+        var recommend = FlightService.changeState(id, EntryFlight.State.DELAYED, delayTo);
+        PersistService.sync();
+        return recommend;
     }
 
     @PostMapping("/id/{id}/cancel/")
     EntryFlight publishCancelById(@PathVariable int id) throws NotFoundException {
-        return FlightService.changeState(id, EntryFlight.State.CANCELED, null);
+        var recommend = FlightService.changeState(id, EntryFlight.State.CANCELED, null);
+        PersistService.sync();
+        return recommend;
     }
 }
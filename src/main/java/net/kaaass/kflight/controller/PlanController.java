@@ -1,5 +1,6 @@
 package net.kaaass.kflight.controller;
 
+import net.kaaass.kflight.exception.BadRequestException;
 import net.kaaass.kflight.exception.NotFoundException;
 import net.kaaass.kflight.service.CityService;
 import net.kaaass.kflight.service.PlanService;
@@ -19,11 +20,15 @@ public class PlanController {
     @GetMapping("/")
     List<PlanService.FlightPlan> plan(@RequestParam String from,
                                       @RequestParam String to,
-                                      @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate date) throws NotFoundException {
+                                      @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate date,
+                                      @RequestParam(required = false) Integer limit)
+            throws NotFoundException, BadRequestException {
+        if (limit != null && limit <= 0)
+            throw new BadRequestException("方案数必须为正数！");
         var fromCity = CityService.findByName(from)
                 .orElseThrow(() -> new NotFoundException("城市不存在！"));
         var toCity = CityService.findByName(to)
                 .orElseThrow(() -> new NotFoundException("城市不存在！"));
-        return PlanService.plan(fromCity, toCity, date);
+        return PlanService.plan(fromCity, toCity, date, limit == null ? 0 : limit);
     }
 }
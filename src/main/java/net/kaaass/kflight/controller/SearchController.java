@@ -6,6 +6,7 @@ import net.kaaass.kflight.exception.BadRequestException;
 import net.kaaass.kflight.exception.NotFoundException;
 import net.kaaass.kflight.service.CityService;
 import net.kaaass.kflight.service.FlightService;
+import net.kaaass.kflight.service.SearchCache;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -30,19 +31,40 @@ public class SearchController {
                 .orElseThrow(() -> new NotFoundException("城市不存在！"));
         var toCity = CityService.findByName(to)
                 .orElseThrow(() -> new NotFoundException("城市不存在！"));
-        var result = FlightService.findAllByFromToAndDate(fromCity, toCity, date);
-        Sorter.sortFlight(result, sort);
-        return result;
+        var key = String.join(":", "from-to-date", from, to, date.toString(), sort);
+        return SearchCache.find(key, SearchCache.stampOf(fromCity, toCity, date, sort), () -> {
+            var result = FlightService.findAllByFromToAndDate(fromCity, toCity, date);
+            Sorter.sortFlight(result, sort);
+            return result;
+        });
     }
 
     @GetMapping("/between/")
     public List<EntryFlight> findBetween(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
                                          @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
-                                         @RequestParam(defaultValue = "dpR") String sort)
+                                         @RequestParam(defaultValue = "dpR") String sort,
+                                         @RequestParam(defaultValue = "0") int offset,
+                                         @RequestParam(required = false) Integer limit)
             throws BadRequestException {
-        var result = FlightService.findBetween(start, end);
-        Sorter.sortFlight(result, sort);
-        return result;
+        if (offset < 0 || (limit != null && limit < 0))
+            throw new BadRequestException("分页参数不能为负！");
+        int pageSize = limit == null ? Integer.MAX_VALUE : limit;
+        // 按起飞时间排序即索引顺序，直接按排名分页
+        if (sort.isEmpty() || sort.equals("d"))
+            return FlightService.findBetween(start, end, offset, pageSize);
+        // 其余排序先对整个范围排序，缓存完整结果，各页从中截取
+        var key = String.join(":", "between", start.toString(), end.toString(), sort);
+        return SearchCache.findPage(key, SearchCache.stampOf(start.toLocalDate(), end.toLocalDate(), sort), () -> {
+            var result = FlightService.findBetween(start, end);
+            Sorter.sortFlight(result, sort);
+            return result;
+        }, offset, pageSize);
+    }
+
+    @GetMapping("/between/count/")
+    public int countBetween(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end) {
+        return FlightService.countBetween(start, end);
     }
 
     @GetMapping("/from-date/")
@@ -52,9 +74,12 @@ public class SearchController {
             throws NotFoundException, BadRequestException {
         var fromCity = CityService.findByName(from)
                 .orElseThrow(() -> new NotFoundException("城市不存在！"));
-        var result = FlightService.findByFromAndDate(fromCity, date);
-        Sorter.sortFlight(result, sort);
-        return result;
+        var key = String.join(":", "from-date", from, date.toString(), sort);
+        return SearchCache.find(key, SearchCache.stampOf(fromCity, date, sort), () -> {
+            var result = FlightService.findByFromAndDate(fromCity, date);
+            Sorter.sortFlight(result, sort);
+            return result;
+        });
     }
 
     @GetMapping("/to-date/")
@@ -64,8 +89,11 @@ public class SearchController {
             throws NotFoundException, BadRequestException {
         var toCity = CityService.findByName(to)
                 .orElseThrow(() -> new NotFoundException("城市不存在！"));
-        var result = FlightService.findByToAndDate(toCity, date);
-        Sorter.sortFlight(result, sort);
-        return result;
+        var key = String.join(":", "to-date", to, date.toString(), sort);
+        return SearchCache.find(key, SearchCache.stampOf(toCity, date, sort), () -> {
+            var result = FlightService.findByToAndDate(toCity, date);
+            Sorter.sortFlight(result, sort);
+            return result;
+        });
     }
 }
@@ -1,12 +1,15 @@
 package net.kaaass.kflight.controller;
 
+import net.kaaass.kflight.data.entry.EntryFlight;
 import net.kaaass.kflight.data.entry.EntryTicketOrder;
 import net.kaaass.kflight.exception.BadRequestException;
 import net.kaaass.kflight.exception.NotFoundException;
 import net.kaaass.kflight.service.FlightService;
+import net.kaaass.kflight.service.PersistService;
 import net.kaaass.kflight.service.TicketService;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
@@ -19,7 +22,9 @@ public class TicketController {
         var flight = FlightService.findByFlightNo(flightNo)
                 .orElseThrow(() -> new NotFoundException("未找到此航班！"));
         var order = new EntryTicketOrder(flight, phone);
-        return TicketService.orderTicket(order);
+        TicketService.orderTicket(order);
+        PersistService.sync();
+        return order;
     }
 
     @PostMapping("/order/id/{id}/")
@@ -28,7 +33,25 @@ public class TicketController {
         var flight = FlightService.getById(id)
                 .orElseThrow(() -> new NotFoundException("未找到此航班！"));
         var order = new EntryTicketOrder(flight, phone);
-        return TicketService.orderTicket(order);
+        TicketService.orderTicket(order);
+        PersistService.sync();
+        return order;
+    }
+
+    @PostMapping("/order/{flightNo}/batch/")
+    public List<EntryTicketOrder> batchOrderByFlightNo(@PathVariable String flightNo,
+                                                       @RequestParam List<String> phone) throws NotFoundException, BadRequestException {
+        var flight = FlightService.findByFlightNo(flightNo)
+                .orElseThrow(() -> new NotFoundException("未找到此航班！"));
+        return batchOrder(flight, phone);
+    }
+
+    @PostMapping("/order/id/{id}/batch/")
+    public List<EntryTicketOrder> batchOrderById(@PathVariable int id,
+                                                 @RequestParam List<String> phone) throws NotFoundException, BadRequestException {
+        var flight = FlightService.getById(id)
+                .orElseThrow(() -> new NotFoundException("未找到此航班！"));
+        return batchOrder(flight, phone);
     }
 
     @PostMapping("/withdraw/{flightNo}/")
@@ -37,6 +60,7 @@ public class TicketController {
         var flight = FlightService.findByFlightNo(flightNo)
                 .orElseThrow(() -> new NotFoundException("未找到此航班！"));
         TicketService.withdrawTicket(flight, phone);
+        PersistService.sync();
     }
 
     @PostMapping("/withdraw/id/{id}/")
@@ -45,10 +69,48 @@ public class TicketController {
         var flight = FlightService.getById(id)
                 .orElseThrow(() -> new NotFoundException("未找到此航班！"));
         TicketService.withdrawTicket(flight, phone);
+        PersistService.sync();
     }
 
     @GetMapping("/queue/")
     public List<EntryTicketOrder> withdrawById() {
         return TicketService.getTicketsInQueue();
     }
+
+    @GetMapping("/queue/{flightNo}/")
+    public List<EntryTicketOrder> queueByFlightNo(@PathVariable String flightNo,
+                                                  @RequestParam(defaultValue = "0") int offset,
+                                                  @RequestParam(required = false) Integer limit)
+            throws NotFoundException, BadRequestException {
+        var flight = FlightService.findByFlightNo(flightNo)
+                .orElseThrow(() -> new NotFoundException("未找到此航班！"));
+        return queuePage(flight, offset, limit);
+    }
+
+    @GetMapping("/queue/id/{id}/")
+    public List<EntryTicketOrder> queueById(@PathVariable int id,
+                                            @RequestParam(defaultValue = "0") int offset,
+                                            @RequestParam(required = false) Integer limit)
+            throws NotFoundException, BadRequestException {
+        var flight = FlightService.getById(id)
+                .orElseThrow(() -> new NotFoundException("未找到此航班！"));
+        return queuePage(flight, offset, limit);
+    }
+
+    private List<EntryTicketOrder> batchOrder(EntryFlight flight, List<String> phones) throws BadRequestException {
+        if (phones.isEmpty())
+            throw new BadRequestException("订票人不能为空！");
+        var orders = new ArrayList<EntryTicketOrder>(phones.size());
+        for (var phone : phones)
+            orders.add(new EntryTicketOrder(flight, phone));
+        TicketService.orderTickets(orders);
+        PersistService.sync();
+        return orders;
+    }
+
+    private List<EntryTicketOrder> queuePage(EntryFlight flight, int offset, Integer limit) throws BadRequestException {
+        if (offset < 0 || (limit != null && limit < 0))
+            throw new BadRequestException("分页参数不能为负数！");
+        return TicketService.getTicketsInQueue(flight, offset, limit == null ? Integer.MAX_VALUE : limit);
+    }
 }
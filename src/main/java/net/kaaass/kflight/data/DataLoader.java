@@ -1,47 +1,129 @@
 package net.kaaass.kflight.data;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
 import net.kaaass.kflight.data.entry.EntryFlight;
 import net.kaaass.kflight.service.FlightService;
-import net.kaaass.kflight.util.FileUtils;
+import net.kaaass.kflight.service.PersistService;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * 数据加载
+ * <p>
+ * 以 JsonParser 逐个解析数组中的航班，每满一批即加入航班服务，不缓存整个文件。
+ * 批量不小于已导入数，使每批都能归并建立索引，总耗时与航班数成线性；
+ * 批次只多持有航班的引用，航班本身加入后本就常驻内存。
+ * 解析出错时，已加入的批次保留，未满的批次丢弃
  */
+@Slf4j
 public class DataLoader {
 
+    /**
+     * 每批加入的最少航班数，可通过系统属性 kflight.import.batch 调整
+     */
+    private final static int BATCH_SIZE = Integer.getInteger("kflight.import.batch", 4096);
+
+    /**
+     * 每导入多少航班输出一次进度
+     */
+    private final static long PROGRESS_INTERVAL = 100_000;
+
+    private final static ObjectMapper MAPPER = new ObjectMapper();
+
     /**
      * 从文件名加载航班数据
+     *
+     * @return 导入的航班数
      */
-    public static void loadFlightFromJsonFile(String filename) throws IOException {
-        var jsonStr = FileUtils.readAll(filename);
-        loadFlightFromJson(jsonStr);
+    public static long loadFlightFromJsonFile(String filename) throws IOException {
+        try (var channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            return loadFlightFromJson(Channels.newInputStream(channel));
+        }
     }
 
     /**
      * 从资源名加载航班数据
+     *
+     * @return 导入的航班数
      */
-    public static void loadFlightFromJsonResource(String resource) throws IOException {
-        var stream = DataLoader.class.getResourceAsStream(resource);
-        if (stream == null)
-            throw new FileNotFoundException("No such resource: " + resource);
-        var jsonStr = FileUtils.readAll(stream);
-        loadFlightFromJson(jsonStr);
+    public static long loadFlightFromJsonResource(String resource) throws IOException {
+        try (var stream = DataLoader.class.getResourceAsStream(resource)) {
+            if (stream == null)
+                throw new FileNotFoundException("No such resource: " + resource);
+            return loadFlightFromJson(stream);
+        }
     }
 
     /**
      * 从 Json 字符串加载航班数据
+     *
+     * @return 导入的航班数
+     */
+    public static long loadFlightFromJson(String json) throws IOException {
+        try (var parser = MAPPER.getFactory().createParser(json)) {
+            return loadFlightFromJson(parser);
+        }
+    }
+
+    /**
+     * 从 UTF-8 编码的 Json 流加载航班数据，解析器自带缓冲，不需再包装
+     *
+     * @return 导入的航班数
+     */
+    public static long loadFlightFromJson(InputStream stream) throws IOException {
+        try (var parser = MAPPER.getFactory().createParser(stream)) {
+            return loadFlightFromJson(parser);
+        }
+    }
+
+    private static long loadFlightFromJson(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY)
+            throw new JsonParseException(parser, "航班数据应为数组");
+        long start = System.currentTimeMillis();
+        long count = 0;
+        var batch = new ArrayList<EntryFlight>(BATCH_SIZE);
+        try {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (parser.currentToken() == null)
+                    throw new JsonParseException(parser, "航班数据不完整");
+                batch.add(MAPPER.readValue(parser, EntryFlight.class));
+                if (batch.size() >= Math.max(BATCH_SIZE, count))
+                    count = flush(batch, count);
+            }
+            count = flush(batch, count);
+        } finally {
+            // 已加入的航班同样需要落盘
+            PersistService.sync();
+        }
+        log.info("共导入 {} 条航班，耗时 {} ms", count, System.currentTimeMillis() - start);
+        return count;
+    }
+
+    /**
+     * 加入一批航班并输出进度
+     *
+     * @return 累计导入数
      */
-    public static void loadFlightFromJson(String json) throws JsonProcessingException {
-        var mapper = new ObjectMapper();
-        var list = mapper.readValue(json, new TypeReference<List<EntryFlight>>() {
-        });
-        list.forEach(FlightService::addEntry);
+    private static long flush(List<EntryFlight> batch, long count) {
+        if (batch.isEmpty())
+            return count;
+        FlightService.addEntries(batch);
+        long ret = count + batch.size();
+        if (ret / PROGRESS_INTERVAL != count / PROGRESS_INTERVAL)
+            log.info("已导入 {} 条航班", ret);
+        batch.clear();
+        return ret;
     }
 }
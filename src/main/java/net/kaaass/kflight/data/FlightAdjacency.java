@@ -0,0 +1,255 @@
+package net.kaaass.kflight.data;
+
+import net.kaaass.kflight.algorithm.Sorter;
+import net.kaaass.kflight.data.entry.EntryCity;
+import net.kaaass.kflight.data.entry.EntryFlight;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按城市、日期划分的出港航班邻接表
+ * <p>
+ * 每个城市每日的出港航班按起飞时间升序存放于基本类型数组。更新时写时复制，读取无需加锁
+ */
+public class FlightAdjacency {
+
+    /**
+     * 某城市某日的出港航班，不可变
+     */
+    public static final class Slot {
+
+        public static final Slot EMPTY = new Slot(new EntryFlight[0], new long[0], new long[0], new int[0]);
+
+        private final EntryFlight[] flights;
+
+        private final long[] departure;
+
+        private final long[] landing;
+
+        private final int[] to;
+
+        private Slot(EntryFlight[] flights, long[] departure, long[] landing, int[] to) {
+            this.flights = flights;
+            this.departure = departure;
+            this.landing = landing;
+            this.to = to;
+        }
+
+        public int size() {
+            return flights.length;
+        }
+
+        public EntryFlight flightAt(int i) {
+            return flights[i];
+        }
+
+        /**
+         * 起飞时间，以 UTC 秒计
+         */
+        public long departureAt(int i) {
+            return departure[i];
+        }
+
+        /**
+         * 降落时间，以 UTC 秒计
+         */
+        public long landingAt(int i) {
+            return landing[i];
+        }
+
+        /**
+         * 目的城市编号
+         */
+        public int toAt(int i) {
+            return to[i];
+        }
+
+        /**
+         * 二分查找第一个起飞时间不早于 time 的航班
+         *
+         * @return 下标，若不存在则为 size()
+         */
+        public int lowerBound(long time) {
+            int lo = 0, hi = departure.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (departure[mid] < time)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+
+        /**
+         * 二分查找第一个起飞时间晚于 time 的航班
+         */
+        private int upperBound(long time) {
+            int lo = 0, hi = departure.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (departure[mid] <= time)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+
+        /**
+         * 加入航班，起飞时间相同者按加入顺序排列
+         */
+        private Slot with(EntryFlight flight) {
+            long dep = flight.getDepartureTime().toEpochSecond(ZoneOffset.UTC);
+            int pos = upperBound(dep);
+            int n = size();
+            var nFlights = new EntryFlight[n + 1];
+            var nDeparture = new long[n + 1];
+            var nLanding = new long[n + 1];
+            var nTo = new int[n + 1];
+            System.arraycopy(flights, 0, nFlights, 0, pos);
+            System.arraycopy(departure, 0, nDeparture, 0, pos);
+            System.arraycopy(landing, 0, nLanding, 0, pos);
+            System.arraycopy(to, 0, nTo, 0, pos);
+            nFlights[pos] = flight;
+            nDeparture[pos] = dep;
+            nLanding[pos] = flight.getLandingTime().toEpochSecond(ZoneOffset.UTC);
+            nTo[pos] = flight.getTo().getId();
+            System.arraycopy(flights, pos, nFlights, pos + 1, n - pos);
+            System.arraycopy(departure, pos, nDeparture, pos + 1, n - pos);
+            System.arraycopy(landing, pos, nLanding, pos + 1, n - pos);
+            System.arraycopy(to, pos, nTo, pos + 1, n - pos);
+            return new Slot(nFlights, nDeparture, nLanding, nTo);
+        }
+
+        /**
+         * 归并加入一批按起飞时间稳定排序的航班，起飞时间相同者已有航班在前
+         */
+        private Slot withAll(List<EntryFlight> added) {
+            int n = size() + added.size();
+            var nFlights = new EntryFlight[n];
+            var nDeparture = new long[n];
+            var nLanding = new long[n];
+            var nTo = new int[n];
+            int i = 0, j = 0;
+            for (int k = 0; k < n; k++) {
+                if (j >= added.size() || (i < size() &&
+                        departure[i] <= added.get(j).getDepartureTime().toEpochSecond(ZoneOffset.UTC))) {
+                    nFlights[k] = flights[i];
+                    nDeparture[k] = departure[i];
+                    nLanding[k] = landing[i];
+                    nTo[k] = to[i];
+                    i++;
+                } else {
+                    var flight = added.get(j++);
+                    nFlights[k] = flight;
+                    nDeparture[k] = flight.getDepartureTime().toEpochSecond(ZoneOffset.UTC);
+                    nLanding[k] = flight.getLandingTime().toEpochSecond(ZoneOffset.UTC);
+                    nTo[k] = flight.getTo().getId();
+                }
+            }
+            return new Slot(nFlights, nDeparture, nLanding, nTo);
+        }
+
+        /**
+         * 移除航班（按引用比较）
+         *
+         * @return 移除后的结果，若航班不存在则返回自身
+         */
+        private Slot without(EntryFlight flight) {
+            int pos = -1;
+            for (int i = 0; i < flights.length; i++) {
+                if (flights[i] == flight) {
+                    pos = i;
+                    break;
+                }
+            }
+            if (pos < 0)
+                return this;
+            int n = size();
+            if (n == 1)
+                return EMPTY;
+            var nFlights = Arrays.copyOf(flights, n - 1);
+            var nDeparture = Arrays.copyOf(departure, n - 1);
+            var nLanding = Arrays.copyOf(landing, n - 1);
+            var nTo = Arrays.copyOf(to, n - 1);
+            System.arraycopy(flights, pos + 1, nFlights, pos, n - pos - 1);
+            System.arraycopy(departure, pos + 1, nDeparture, pos, n - pos - 1);
+            System.arraycopy(landing, pos + 1, nLanding, pos, n - pos - 1);
+            System.arraycopy(to, pos + 1, nTo, pos, n - pos - 1);
+            return new Slot(nFlights, nDeparture, nLanding, nTo);
+        }
+    }
+
+    private final ConcurrentHashMap<Long, Slot> slots = new ConcurrentHashMap<>();
+
+    /**
+     * 加入航班
+     */
+    public void add(EntryFlight flight) {
+        slots.compute(keyOf(flight), (key, slot) -> (slot == null ? Slot.EMPTY : slot).with(flight));
+    }
+
+    /**
+     * 批量加入航班
+     * <p>
+     * 按城市、日期分组，组内按起飞时间稳定排序后与已有航班归并，每组只发布一次新数组，
+     * 结果与逐个加入一致
+     */
+    public void addAll(List<EntryFlight> flights) {
+        var groups = new HashMap<Long, List<EntryFlight>>();
+        for (var flight : flights)
+            groups.computeIfAbsent(keyOf(flight), key -> new ArrayList<>()).add(flight);
+        for (var group : groups.entrySet()) {
+            var added = group.getValue();
+            Sorter.sort(added, Comparator.comparing(EntryFlight::getDepartureTime));
+            slots.compute(group.getKey(), (key, slot) -> (slot == null ? Slot.EMPTY : slot).withAll(added));
+        }
+    }
+
+    /**
+     * 移除航班，须在修改起飞城市或起飞时间之前调用
+     */
+    public void remove(EntryFlight flight) {
+        slots.computeIfPresent(keyOf(flight), (key, slot) -> {
+            var ret = slot.without(flight);
+            return ret.size() == 0 ? null : ret;
+        });
+    }
+
+    /**
+     * 获得城市某日的出港航班
+     */
+    public Slot outbound(EntryCity city, LocalDate date) {
+        return outbound(city.getId(), date);
+    }
+
+    /**
+     * 由城市编号获得城市某日的出港航班
+     */
+    public Slot outbound(int city, LocalDate date) {
+        return slots.getOrDefault(keyOf(city, date.toEpochDay()), Slot.EMPTY);
+    }
+
+    /**
+     * 清空内容
+     */
+    public void clear() {
+        slots.clear();
+    }
+
+    private static long keyOf(EntryFlight flight) {
+        return keyOf(flight.getFrom().getId(), flight.getDepartureTime().toLocalDate().toEpochDay());
+    }
+
+    private static long keyOf(int city, long epochDay) {
+        return ((long) city << 32) | (epochDay & 0xffffffffL);
+    }
+}
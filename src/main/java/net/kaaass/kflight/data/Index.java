@@ -1,17 +1,38 @@
 package net.kaaass.kflight.data;
 
+import net.kaaass.kflight.algorithm.Sorter;
 import net.kaaass.kflight.data.entry.IEntry;
+import net.kaaass.kflight.data.structure.BPlusTree;
+import net.kaaass.kflight.data.structure.IOrderedStore;
+import net.kaaass.kflight.data.structure.LongRBTree;
 import net.kaaass.kflight.data.structure.RBTree;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 数据的索引
+ * <p>
+ * 索引是线程安全的：写操作独占，读操作共享读锁，因此并发的范围查询
+ * 互不阻塞，且不会观察到旋转到一半的红黑树
+ * <p>
+ * 数值索引请使用 {@link #ofLong}，其以原始类型存储与比较键，不装箱。
+ * 构造时可通过 {@link Storage} 选择底层存储结构。
+ * 批量添加时新存储结构在锁外建立，完成后整体替换，多个索引可经 {@link #bulkLoadAll} 并行建立。
  *
  * @param <S> Entry 类型
  * @param <T> 索引项数据类型
@@ -19,6 +40,31 @@ import java.util.function.Function;
  */
 public class Index<S extends IEntry, T, I> {
 
+    /**
+     * 索引的底层存储结构
+     */
+    public enum Storage {
+
+        /**
+         * 红黑树，long 索引使用不装箱的特化版本
+         */
+        RB_TREE,
+
+        /**
+         * B+ 树，宽节点数组存放，叶子链接，范围遍历为顺序扫描
+         */
+        B_PLUS_TREE;
+
+        /**
+         * 按存储结构创建有序存储
+         */
+        <K, V> IOrderedStore<K, V> create(Comparator<? super K> comparator) {
+            if (this == B_PLUS_TREE)
+                return new BPlusTree<>(comparator);
+            return new RBTree<>(comparator);
+        }
+    }
+
     /**
      * 由 Entry 获得数据的函数
      */
@@ -35,22 +81,215 @@ public class Index<S extends IEntry, T, I> {
     private Comparator<I> comparator;
 
     /**
-     * 红黑树，用于存放索引
+     * 有序存储，用于存放索引
+     */
+    private IOrderedStore<I, S> store;
+
+    /**
+     * 创建同类有序存储，批量建立时使用
+     */
+    private final Supplier<IOrderedStore<I, S>> storeFactory;
+
+    /**
+     * 由数据构建 long 索引，仅 long 索引使用
+     */
+    private ToLongFunction<T> funcLongIndex = null;
+
+    /**
+     * long 索引的存储，与 store 为同一对象，非 null 时键不装箱
+     */
+    private LongRBTree<S> longStore = null;
+
+    /**
+     * 创建 long 索引的存储，批量建立时使用，仅 long 索引使用
+     */
+    private Supplier<LongRBTree<S>> longStoreFactory = null;
+
+    /**
+     * 以 long 索引的存储同时替换 store 与 longStore，仅 long 索引使用
+     */
+    private Consumer<LongRBTree<S>> longStoreInstaller = null;
+
+    /**
+     * 读写锁，保护存储结构
+     */
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * 批量添加的 entry 数不少于此值时才并行建立多个索引
+     */
+    private final static int PARALLEL_THRESHOLD = 1024;
+
+    /**
+     * 范围遍历时每次加锁取出的对象数
+     */
+    private final static int SCAN_CHUNK = 128;
+
+    /**
+     * 批量添加逐个插入时，每次加锁插入的 entry 数
      */
-    private RBTree<I, S> rbTree;
+    private final static int INSERT_CHUNK = 256;
 
     public Index(Function<S, T> funcDataFetcher, Function<T, I> funcIndex, Comparator<I> comparator) {
+        this(funcDataFetcher, funcIndex, comparator, Storage.RB_TREE);
+    }
+
+    public Index(Function<S, T> funcDataFetcher, Function<T, I> funcIndex, Comparator<I> comparator,
+                 Storage storage) {
+        this(funcDataFetcher, funcIndex, comparator, () -> storage.<I, S>create(comparator));
+    }
+
+    private Index(Function<S, T> funcDataFetcher, Function<T, I> funcIndex, Comparator<I> comparator,
+                  Supplier<IOrderedStore<I, S>> storeFactory) {
         this.funcDataFetcher = funcDataFetcher;
         this.funcIndex = funcIndex;
         this.comparator = comparator;
-        this.rbTree = new RBTree<>(comparator);
+        this.storeFactory = storeFactory;
+        this.store = storeFactory.get();
+    }
+
+    /**
+     * 建立以 long 为键的索引，int 键可直接拓宽使用
+     */
+    public static <S extends IEntry, T> Index<S, T, Long> ofLong(Function<S, T> funcDataFetcher,
+                                                                 ToLongFunction<T> funcIndex) {
+        return ofLong(funcDataFetcher, funcIndex, Storage.RB_TREE);
+    }
+
+    /**
+     * 建立以 long 为键的索引，并指定底层存储结构
+     * <p>
+     * 仅红黑树有不装箱的特化版本，B+ 树下键仍会装箱
+     */
+    public static <S extends IEntry, T> Index<S, T, Long> ofLong(Function<S, T> funcDataFetcher,
+                                                                 ToLongFunction<T> funcIndex,
+                                                                 Storage storage) {
+        if (storage != Storage.RB_TREE)
+            return new Index<>(funcDataFetcher, funcIndex::applyAsLong, Comparator.naturalOrder(), storage);
+        Supplier<LongRBTree<S>> factory = LongRBTree::new;
+        var index = new Index<S, T, Long>(funcDataFetcher, funcIndex::applyAsLong,
+                Comparator.naturalOrder(), factory::get);
+        index.funcLongIndex = funcIndex;
+        index.longStoreFactory = factory;
+        index.longStoreInstaller = tree -> {
+            index.store = tree;
+            index.longStore = tree;
+        };
+        index.longStoreInstaller.accept(factory.get());
+        return index;
     }
 
     /**
      * 返回索引大小
      */
     public int size() {
-        return rbTree.size();
+        // 单字段读取，使用乐观读即可
+        var stamp = lock.tryOptimisticRead();
+        var size = store.size();
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                size = store.size();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 在读锁内执行读操作
+     * <p>
+     * 树遍历在写入时可能看到不一致的指针，故不使用乐观读
+     */
+    private <R> R read(Supplier<R> reader) {
+        var stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 在写锁内执行写操作
+     */
+    private <R> R write(Supplier<R> writer) {
+        var stamp = lock.writeLock();
+        try {
+            return writer.get();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /*
+    以下方法须在锁内调用，long 索引走原始类型路径
+     */
+
+    private void storeInsert(T data, S entry) {
+        if (longStore != null)
+            longStore.insert(funcLongIndex.applyAsLong(data), entry);
+        else
+            store.insert(funcIndex.apply(data), entry);
+    }
+
+    private boolean storeDelete(T data, S entry) {
+        if (longStore != null)
+            return longStore.deletePair(funcLongIndex.applyAsLong(data), entry);
+        return store.deletePair(funcIndex.apply(data), entry);
+    }
+
+    private S storeFind(T data) {
+        if (longStore != null)
+            return longStore.findValue(funcLongIndex.applyAsLong(data));
+        return store.findValue(funcIndex.apply(data));
+    }
+
+    private boolean storeHas(T data) {
+        if (longStore != null)
+            return longStore.has(funcLongIndex.applyAsLong(data));
+        return store.has(funcIndex.apply(data));
+    }
+
+    private boolean storeHas(T data, S entry) {
+        if (longStore != null)
+            return longStore.has(funcLongIndex.applyAsLong(data), entry);
+        return store.has(funcIndex.apply(data), entry);
+    }
+
+    /**
+     * 小于 data 索引值的元素数
+     */
+    private int storeRank(T data) {
+        if (longStore != null)
+            return longStore.rank(funcLongIndex.applyAsLong(data));
+        return store.rank(funcIndex.apply(data));
+    }
+
+    /**
+     * 不大于 data 索引值的元素数
+     */
+    private int storeRankUpper(T data) {
+        if (longStore != null)
+            return longStore.rankUpper(funcLongIndex.applyAsLong(data));
+        return store.rankUpper(funcIndex.apply(data));
+    }
+
+    /**
+     * 收集排名 [start, end) 中的对象，跳过前 offset 项，最多 limit 项
+     */
+    private List<S> collectRange(int start, int end, int offset, int limit) {
+        var total = Math.max(0, end - start);
+        var skip = Math.min(Math.max(0, offset), total);
+        var count = Math.min(total - skip, Math.max(0, limit));
+        var result = new ArrayList<S>(count);
+        // 通过排名直接定位起点
+        var it = store.iteratorAt(start + skip);
+        for (; it.hasNext() && count > 0; count--) {
+            result.add(it.next());
+        }
+        return result;
     }
 
     /**
@@ -71,14 +310,237 @@ public class Index<S extends IEntry, T, I> {
      * 向索引中添加 entry
      */
     public void addIndexFor(S entry) {
-        rbTree.insert(indexOf(entry), entry);
+        var data = funcDataFetcher.apply(entry);
+        write(() -> {
+            storeInsert(data, entry);
+            return null;
+        });
+    }
+
+    /**
+     * 带键的 entry，用于批量建立索引
+     */
+    private static final class Keyed<I, S> {
+        final I key;
+        final long longKey;
+        final S entry;
+
+        Keyed(I key, long longKey, S entry) {
+            this.key = key;
+            this.longKey = longKey;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * 计算 entry 的键，键为 null 时不索引，返回 null
+     */
+    private Keyed<I, S> keyedOf(S entry) {
+        var data = funcDataFetcher.apply(entry);
+        if (longStore != null)
+            return new Keyed<>(null, funcLongIndex.applyAsLong(data), entry);
+        var key = funcIndex.apply(data);
+        return key == null ? null : new Keyed<>(key, 0, entry);
+    }
+
+    private int compareKeyed(Keyed<I, S> a, Keyed<I, S> b) {
+        if (longStore != null)
+            return Long.compare(a.longKey, b.longKey);
+        return comparator.compare(a.key, b.key);
+    }
+
+    /**
+     * 锁外准备好的批量添加
+     */
+    private static final class Prepared {
+
+        /**
+         * 准备后索引是否未被修改，须在锁内调用
+         */
+        final BooleanSupplier current;
+
+        /**
+         * 替换存储结构，须在写锁内调用
+         */
+        final Runnable install;
+
+        Prepared(BooleanSupplier current, Runnable install) {
+            this.current = current;
+            this.install = install;
+        }
+    }
+
+    /**
+     * 已在准备时完成的批量添加，无需替换
+     */
+    private static final Prepared DONE = new Prepared(() -> true, () -> {
+    });
+
+    /**
+     * 批量添加 entry 的索引
+     * <p>
+     * 键以稳定排序排好后与已有内容归并，再自底向上建立新的存储结构，除排序外耗时 O(n)。
+     * 建立期间不阻塞查询，完成后在写锁内整体替换；若期间索引被修改，则重新准备。
+     * 相同键的 entry 排在已有 entry 之后并保持列表顺序，与逐个添加一致。
+     * 若批量相对已有内容很小，逐个插入代价更低，则分段加锁逐个插入
+     */
+    public void bulkLoad(List<S> entries) {
+        while (true) {
+            var prepared = prepareBulkLoad(entries);
+            var stamp = lock.writeLock();
+            try {
+                if (prepared.current.getAsBoolean()) {
+                    prepared.install.run();
+                    return;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * 并行批量添加多个索引
+     * <p>
+     * 各索引在 ForkJoin 公共池中同时建立新的存储结构，全部完成后按列表顺序取得所有写锁，
+     * 仅在锁内一并替换引用。准备期间被修改的索引不替换，释放锁后重新准备
+     */
+    public static <S extends IEntry> void bulkLoadAll(List<Index<S, ?, ?>> indexes, List<S> entries) {
+        var pending = new ArrayList<>(indexes);
+        while (!pending.isEmpty()) {
+            var tasks = new ArrayList<ForkJoinTask<Prepared>>(pending.size());
+            for (var index : pending)
+                tasks.add(ForkJoinTask.adapt(() -> index.prepareBulkLoad(entries)));
+            if (entries.size() >= PARALLEL_THRESHOLD)
+                ForkJoinTask.invokeAll(tasks);
+            else
+                tasks.forEach(ForkJoinTask::invoke);
+            var stale = new ArrayList<Index<S, ?, ?>>();
+            var stamps = new long[pending.size()];
+            for (int i = 0; i < stamps.length; i++)
+                stamps[i] = pending.get(i).lock.writeLock();
+            try {
+                for (int i = 0; i < tasks.size(); i++) {
+                    var prepared = tasks.get(i).join();
+                    if (prepared.current.getAsBoolean())
+                        prepared.install.run();
+                    else
+                        stale.add(pending.get(i));
+                }
+            } finally {
+                for (int i = stamps.length - 1; i >= 0; i--)
+                    pending.get(i).lock.unlockWrite(stamps[i]);
+            }
+            pending = stale;
+        }
+    }
+
+    /**
+     * 在锁外准备批量添加
+     * <p>
+     * 归并与建立均在锁外进行；逐个插入时每 {@link #INSERT_CHUNK} 个释放一次写锁，
+     * 完成后返回 {@link #DONE}
+     */
+    private Prepared prepareBulkLoad(List<S> entries) {
+        var added = new ArrayList<Keyed<I, S>>(entries.size());
+        for (var entry : entries) {
+            var keyed = keyedOf(entry);
+            if (keyed != null)
+                added.add(keyed);
+        }
+        if (added.isEmpty())
+            return DONE;
+        Sorter.sort(added, this::compareKeyed);
+        IOrderedStore<I, S> base;
+        int baseModCount;
+        List<Keyed<I, S>> merged;
+        var stamp = lock.readLock();
+        try {
+            base = store;
+            baseModCount = store.modCount();
+            long total = store.size() + added.size();
+            long insertCost = (long) added.size() * (64 - Long.numberOfLeadingZeros(total));
+            merged = store.size() > 0 && insertCost < total ? null : merge(added);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        if (merged == null) {
+            insertAll(added);
+            return DONE;
+        }
+        return new Prepared(() -> store == base && store.modCount() == baseModCount, buildStore(merged));
+    }
+
+    /**
+     * 逐个插入有序的新增内容，分段加写锁，段间不阻塞查询
+     */
+    private void insertAll(List<Keyed<I, S>> added) {
+        for (int from = 0; from < added.size(); from += INSERT_CHUNK) {
+            var chunk = added.subList(from, Math.min(added.size(), from + INSERT_CHUNK));
+            write(() -> {
+                for (var keyed : chunk) {
+                    if (longStore != null)
+                        longStore.insert(keyed.longKey, keyed.entry);
+                    else
+                        store.insert(keyed.key, keyed.entry);
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 将已有内容与有序的新增内容归并，须在锁内调用
+     */
+    private List<Keyed<I, S>> merge(List<Keyed<I, S>> added) {
+        if (store.size() == 0)
+            return added;
+        var ret = new ArrayList<Keyed<I, S>>(store.size() + added.size());
+        var it = store.iteratorAt(0);
+        int i = 0;
+        while (it.hasNext()) {
+            var existing = keyedOf(it.next());
+            // 已有 entry 在前，保证相同键按添加顺序排列
+            while (i < added.size() && compareKeyed(added.get(i), existing) < 0)
+                ret.add(added.get(i++));
+            ret.add(existing);
+        }
+        while (i < added.size())
+            ret.add(added.get(i++));
+        return ret;
+    }
+
+    /**
+     * 由有序内容建立新的存储结构
+     *
+     * @return 替换操作，须在写锁内调用
+     */
+    private Runnable buildStore(List<Keyed<I, S>> sorted) {
+        var values = new ArrayList<S>(sorted.size());
+        for (var keyed : sorted)
+            values.add(keyed.entry);
+        if (longStoreFactory != null) {
+            var keys = new long[sorted.size()];
+            for (int i = 0; i < keys.length; i++)
+                keys[i] = sorted.get(i).longKey;
+            var ret = longStoreFactory.get();
+            ret.build(keys, values);
+            return () -> longStoreInstaller.accept(ret);
+        }
+        var keys = new ArrayList<I>(sorted.size());
+        for (var keyed : sorted)
+            keys.add(keyed.key);
+        var ret = storeFactory.get();
+        ret.build(keys, values);
+        return () -> store = ret;
     }
 
     /**
      * 删除 entry 的索引
      */
     public boolean removeIndexFor(S entry) {
-        return rbTree.deletePair(indexOf(entry), entry);
+        var data = funcDataFetcher.apply(entry);
+        return write(() -> storeDelete(data, entry));
     }
 
     /**
@@ -89,10 +551,7 @@ public class Index<S extends IEntry, T, I> {
     public S findOneRaw(T ind) {
         if (ind == null)
             return null;
-        var node = rbTree.findOne(indexOf(ind));
-        if (node == null)
-            return null;
-        return node.getValue();
+        return read(() -> storeFind(ind));
     }
 
     /**
@@ -106,15 +565,7 @@ public class Index<S extends IEntry, T, I> {
      * 通过索引项寻找全部对象
      */
     public List<S> findAll(T ind) {
-        var result = new ArrayList<S>();
-        var index = indexOf(ind);
-        var cur = rbTree.findLowerBound(index);
-        if (cur != null) {
-            for (; cur != null && cur.getKey().equals(index); cur = rbTree.nextOf(cur)) {
-                result.add(cur.getValue());
-            }
-        }
-        return result;
+        return read(() -> collectRange(storeRank(ind), storeRankUpper(ind), 0, Integer.MAX_VALUE));
     }
 
     /**
@@ -123,9 +574,7 @@ public class Index<S extends IEntry, T, I> {
      * 寻找范围为 [low, high]
      */
     public List<S> findBetween(T low, T high) {
-        var indLow = indexOf(low);
-        var indHigh = indexOf(high);
-        return findBetweenHash(indLow, indHigh);
+        return findBetween(low, high, 0, Integer.MAX_VALUE);
     }
 
     /**
@@ -134,61 +583,220 @@ public class Index<S extends IEntry, T, I> {
      * 寻找范围为 [low, high]
      */
     public List<S> findBetweenHash(I indLow, I indHigh) {
-        var result = new ArrayList<S>();
-        var cur = rbTree.findLowerBound(indLow);
-        var end = rbTree.findUpperBound(indHigh);
-        if (cur == null || end == null)
-            return result;
-        if (rbTree.compareNode(cur, end) > 0) // 即 low > high
-            return result;
-        end = rbTree.nextOf(end);
-        for (; cur != null && cur != end; cur = rbTree.nextOf(cur)) {
-            result.add(cur.getValue());
-        }
-        return result;
+        return findBetweenHash(indLow, indHigh, 0, Integer.MAX_VALUE);
     }
 
     /**
-     * 是否索引项目 entry
+     * 通过索引项寻找索引项之间的对象，并分页
+     * <p>
+     * 寻找范围为 [low, high]，跳过前 offset 项，最多返回 limit 项
      */
-    public boolean has(S entry) {
-        var index = indexOf(entry);
-        return rbTree.has(index, entry);
+    public List<S> findBetween(T low, T high, int offset, int limit) {
+        return read(() -> collectRange(storeRank(low), storeRankUpper(high), offset, limit));
     }
 
     /**
-     * 是否存在索引
+     * 通过索引项哈希寻找索引项之间的对象，并分页
+     * <p>
+     * 寻找范围为 [low, high]，跳过前 offset 项，最多返回 limit 项
      */
-    public boolean has(T ind) {
-        var index = indexOf(ind);
-        return rbTree.has(index);
+    public List<S> findBetweenHash(I indLow, I indHigh, int offset, int limit) {
+        return read(() -> collectRange(store.rank(indLow), store.rankUpper(indHigh), offset, limit));
     }
 
     /**
-     * 清空索引内容
+     * 惰性遍历索引项之间的全部对象
+     * <p>
+     * 遍历范围为 [low, high]，按索引升序分批访问节点，不产生完整的中间列表，
+     * 支持提前终止，并可按排名二分以并行处理。遍历是弱一致的：期间的并发修改
+     * 不会抛出异常，但可能使部分对象被跳过或重复访问
      */
-    public void clear() {
-        rbTree.clear();
+    public Stream<S> scan(T low, T high) {
+        var spliterator = read(() -> {
+            var start = storeRank(low);
+            var end = Math.max(start, storeRankUpper(high));
+            return new RangeSpliterator(start, end);
+        });
+        return StreamSupport.stream(spliterator, false);
     }
 
     /**
-     * 节点遍历
+     * 惰性遍历索引项哈希之间的全部对象
+     * <p>
+     * 遍历范围为 [low, high]，与 {@link #scan} 相同，遍历是弱一致的
      */
-    private void forEachNode(Consumer<RBTree.TreeNode<I, S>> consumer) {
-        var cur = rbTree.getMinimumNode();
-        if (cur != null) {
-            for (; cur != null; cur = rbTree.nextOf(cur)) {
-                consumer.accept(cur);
+    public Stream<S> scanHash(I indLow, I indHigh) {
+        var spliterator = read(() -> {
+            var start = store.rank(indLow);
+            var end = Math.max(start, store.rankUpper(indHigh));
+            return new RangeSpliterator(start, end);
+        });
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * 按排名区间遍历存储结构的分割器
+     * <p>
+     * 每次在一个读锁内按排名取出至多 {@link #SCAN_CHUNK} 个对象，消费者在锁外执行，
+     * 因此消费者中可以安全地访问本索引。若期间索引被修改，下一批按排名重新定位，
+     * 排名区间的终点不超过当时的索引大小
+     */
+    private final class RangeSpliterator implements Spliterator<S> {
+
+        /**
+         * 下一批的起始排名
+         */
+        private int pos;
+
+        /**
+         * 结束排名（不含）
+         */
+        private final int end;
+
+        /**
+         * 自 pos 开始的迭代器，为 null 时惰性定位
+         */
+        private Iterator<S> cur = null;
+
+        /**
+         * 迭代器所属的存储结构及其修改计数，与当前不一致时重新定位
+         */
+        private IOrderedStore<I, S> curStore = null;
+
+        private int curModCount;
+
+        /**
+         * 已取出、尚未交给消费者的对象
+         */
+        private ArrayDeque<S> buffer = new ArrayDeque<>();
+
+        RangeSpliterator(int pos, int end) {
+            this.pos = pos;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super S> action) {
+            if (buffer.isEmpty() && !fill())
+                return false;
+            action.accept(buffer.pollFirst());
+            return true;
+        }
+
+        /**
+         * 在读锁内取出下一批对象
+         *
+         * @return 若已遍历完毕，返回 false
+         */
+        private boolean fill() {
+            var stamp = lock.readLock();
+            try {
+                int limit = Math.min(end, store.size());
+                if (pos >= limit)
+                    return false;
+                if (cur == null || curStore != store || curModCount != store.modCount()) {
+                    cur = store.iteratorAt(pos);
+                    curStore = store;
+                    curModCount = store.modCount();
+                }
+                for (int n = Math.min(limit - pos, SCAN_CHUNK); n > 0; n--) {
+                    buffer.add(cur.next());
+                    pos++;
+                }
+            } finally {
+                lock.unlockRead(stamp);
             }
+            return true;
         }
+
+        @Override
+        public Spliterator<S> trySplit() {
+            int mid = (pos + end) >>> 1;
+            if (mid <= pos)
+                return null;
+            // 前半段继承已取出的对象与已定位的迭代器，后半段重新定位
+            var prefix = new RangeSpliterator(pos, mid);
+            prefix.cur = cur;
+            prefix.curStore = curStore;
+            prefix.curModCount = curModCount;
+            prefix.buffer = buffer;
+            buffer = new ArrayDeque<>();
+            pos = mid;
+            cur = null;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Math.max(0, end - pos) + buffer.size();
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    /**
+     * 计算索引项之间的对象数
+     * <p>
+     * 计数范围为 [low, high]
+     */
+    public int countBetween(T low, T high) {
+        return read(() -> Math.max(0, storeRankUpper(high) - storeRank(low)));
     }
 
     /**
-     * 将索引中全部元素以哈希升序存储于列表，键为哈希
+     * 计算索引项哈希之间的对象数
+     * <p>
+     * 计数范围为 [low, high]
      */
-    List<RBTree.TreeNode<I, S>> toNodeList() {
-        var ret = new ArrayList<RBTree.TreeNode<I, S>>();
-        forEachNode(ret::add);
-        return ret;
+    public int countBetweenHash(I indLow, I indHigh) {
+        return read(() -> Math.max(0, store.rankUpper(indHigh) - store.rank(indLow)));
+    }
+
+    /**
+     * 获得索引值小于 ind 的对象数
+     */
+    public int rankOf(T ind) {
+        return read(() -> storeRank(ind));
+    }
+
+    /**
+     * 获得按索引值升序排名为 k 的对象（从 0 开始）
+     *
+     * @return 若越界，返回 null
+     */
+    public S select(int k) {
+        return read(() -> {
+            if (k < 0 || k >= store.size())
+                return null;
+            return store.iteratorAt(k).next();
+        });
+    }
+
+    /**
+     * 是否索引项目 entry
+     */
+    public boolean has(S entry) {
+        var data = funcDataFetcher.apply(entry);
+        return read(() -> storeHas(data, entry));
+    }
+
+    /**
+     * 是否存在索引
+     */
+    public boolean has(T ind) {
+        return read(() -> storeHas(ind));
+    }
+
+    /**
+     * 清空索引内容
+     */
+    public void clear() {
+        write(() -> {
+            store.clear();
+            return null;
+        });
     }
 }
@@ -0,0 +1,361 @@
+package net.kaaass.kflight.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import net.kaaass.kflight.data.entry.EntryCity;
+import net.kaaass.kflight.data.entry.EntryFlight;
+import net.kaaass.kflight.data.entry.EntryTicketOrder;
+import net.kaaass.kflight.service.CityService;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 航班数据的二进制快照
+ * <p>
+ * 文件由头部、城市与航空公司字典、按列存放的航班字段、机票与排队订单组成，
+ * 读取时以 FileChannel.map 分段映射。写入先写临时文件再原子替换
+ */
+public class Snapshot {
+
+    private static final int MAGIC = 0x4B46534E;
+
+    private static final int VERSION = 1;
+
+    /**
+     * 单次映射的最大字节数
+     */
+    private static final long WINDOW = 256L << 20;
+
+    /**
+     * 快照内容
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Content {
+
+        /**
+         * 对应的日志代数
+         */
+        final long generation;
+
+        /**
+         * 航班，已含机票
+         */
+        final List<EntryFlight> flights;
+
+        /**
+         * 排队订单，同一航班内按排队顺序
+         */
+        final List<EntryTicketOrder> queued;
+    }
+
+    /**
+     * 写入快照
+     *
+     * @param queued 获得航班的排队订单
+     */
+    public static void write(Path file, long generation, List<EntryFlight> flights,
+                             Function<EntryFlight, List<EntryTicketOrder>> queued) throws IOException {
+        int n = flights.size();
+        var cities = new Dictionary();
+        var airlines = new Dictionary();
+        for (var flight : flights) {
+            cities.idOf(flight.getFrom());
+            cities.idOf(flight.getTo());
+            cities.idOf(flight.getMiddle());
+            airlines.idOf(flight.getAirlineName());
+        }
+        var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(generation);
+            cities.writeTo(out);
+            airlines.writeTo(out);
+            out.writeInt(n);
+            // 按列写入航班字段
+            for (var flight : flights)
+                out.writeByte(flight.getState().ordinal());
+            for (var flight : flights)
+                writeString(out, flight.getFlightNo());
+            for (var flight : flights)
+                out.writeInt(airlines.idOf(flight.getAirlineName()));
+            for (var flight : flights)
+                out.writeLong(flight.getDepartureTime().toEpochSecond(ZoneOffset.UTC));
+            for (var flight : flights)
+                out.writeLong(flight.getLandingTime().toEpochSecond(ZoneOffset.UTC));
+            for (var flight : flights)
+                out.writeLong(flight.getFlightTime());
+            for (var flight : flights)
+                out.writeInt(cities.idOf(flight.getFrom()));
+            for (var flight : flights)
+                out.writeInt(cities.idOf(flight.getTo()));
+            for (var flight : flights)
+                out.writeInt(cities.idOf(flight.getMiddle()));
+            for (var flight : flights)
+                out.writeLong(flight.getMiddleTime());
+            for (var flight : flights)
+                out.writeInt(flight.getTotalCabin());
+            for (var flight : flights)
+                out.writeInt(flight.getRestCabin());
+            for (var flight : flights)
+                out.writeFloat(flight.getTicketPrice());
+            // 机票
+            for (var flight : flights)
+                out.writeInt(flight.getTickets().size());
+            for (var flight : flights) {
+                for (var order : flight.getTickets()) {
+                    out.writeInt(order.getID());
+                    writeString(out, order.getPhone());
+                }
+            }
+            // 排队订单
+            var queues = new ArrayList<List<EntryTicketOrder>>(n);
+            for (var flight : flights)
+                queues.add(queued.apply(flight));
+            for (var queue : queues)
+                out.writeInt(queue.size());
+            for (var queue : queues) {
+                for (var order : queue)
+                    writeString(out, order.getPhone());
+            }
+            out.writeInt(MAGIC);
+        }
+        try (var channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 读取快照，城市按名称取得或添加
+     */
+    public static Content read(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var in = new MappedReader(channel);
+            if (in.readInt() != MAGIC)
+                throw new IOException("not a snapshot: " + file);
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("unsupported snapshot version: " + version);
+            long generation = in.readLong();
+            var cityNames = in.readStrings(in.readInt());
+            var cities = new EntryCity[cityNames.length];
+            for (int i = 0; i < cities.length; i++)
+                cities[i] = cityOf(cityNames[i]);
+            var airlines = in.readStrings(in.readInt());
+            int n = in.readInt();
+
+            var states = in.readBytes(n);
+            var flightNos = in.readStrings(n);
+            var airline = in.readInts(n);
+            var departure = in.readLongs(n);
+            var landing = in.readLongs(n);
+            var flightTime = in.readLongs(n);
+            var from = in.readInts(n);
+            var to = in.readInts(n);
+            var middle = in.readInts(n);
+            var middleTime = in.readLongs(n);
+            var totalCabin = in.readInts(n);
+            var restCabin = in.readInts(n);
+            var ticketPrice = in.readFloats(n);
+
+            var stateValues = EntryFlight.State.values();
+            var flights = new ArrayList<EntryFlight>(n);
+            for (int i = 0; i < n; i++) {
+                flights.add(new EntryFlight(null, stateValues[states[i]], flightNos[i], airlines[airline[i]],
+                        LocalDateTime.ofEpochSecond(departure[i], 0, ZoneOffset.UTC),
+                        LocalDateTime.ofEpochSecond(landing[i], 0, ZoneOffset.UTC),
+                        flightTime[i], cityAt(cities, from[i]), cityAt(cities, to[i]), cityAt(cities, middle[i]),
+                        middleTime[i], totalCabin[i], restCabin[i], ticketPrice[i], new ArrayList<>()));
+            }
+            var ticketCount = in.readInts(n);
+            for (int i = 0; i < n; i++) {
+                var flight = flights.get(i);
+                var tickets = flight.getTickets();
+                for (int j = 0; j < ticketCount[i]; j++) {
+                    int id = in.readInt();
+                    var order = new EntryTicketOrder(flight, in.readString());
+                    order.setID(id);
+                    order.setState(EntryTicketOrder.State.DONE);
+                    tickets.add(order);
+                }
+            }
+            var queueCount = in.readInts(n);
+            var queued = new ArrayList<EntryTicketOrder>();
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < queueCount[i]; j++)
+                    queued.add(new EntryTicketOrder(flights.get(i), in.readString()));
+            }
+            if (in.readInt() != MAGIC)
+                throw new IOException("snapshot truncated: " + file);
+            return new Content(generation, flights, queued);
+        }
+    }
+
+    private static EntryCity cityOf(String name) {
+        return CityService.findByName(name).orElseGet(() -> {
+            var city = new EntryCity(name);
+            CityService.addEntry(city);
+            return city;
+        });
+    }
+
+    private static EntryCity cityAt(EntryCity[] cities, int id) {
+        return id < 0 ? null : cities[id];
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * 字符串字典，null 编号为 -1
+     */
+    private static class Dictionary {
+
+        private final HashMap<String, Integer> ids = new HashMap<>();
+
+        private final List<String> values = new ArrayList<>();
+
+        int idOf(EntryCity city) {
+            return city == null ? -1 : idOf(city.getName());
+        }
+
+        int idOf(String value) {
+            if (value == null)
+                return -1;
+            return ids.computeIfAbsent(value, key -> {
+                values.add(key);
+                return values.size() - 1;
+            });
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(values.size());
+            for (var value : values)
+                writeString(out, value);
+        }
+    }
+
+    /**
+     * 分段映射文件的顺序读取器
+     */
+    private static class MappedReader {
+
+        private final FileChannel channel;
+
+        private final long size;
+
+        private long base = 0;
+
+        private MappedByteBuffer buffer;
+
+        MappedReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(WINDOW, size));
+        }
+
+        /**
+         * 保证当前映射段至少剩余 bytes 字节
+         */
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes)
+                return;
+            base += buffer.position();
+            if (size - base < bytes)
+                throw new IOException("snapshot truncated");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(Math.max(WINDOW, bytes), size - base));
+        }
+
+        int readInt() throws IOException {
+            ensure(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        long readLong() throws IOException {
+            ensure(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            ensure(length);
+            var bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        String[] readStrings(int n) throws IOException {
+            var ret = new String[n];
+            for (int i = 0; i < n; i++)
+                ret[i] = readString();
+            return ret;
+        }
+
+        byte[] readBytes(int n) throws IOException {
+            var ret = new byte[n];
+            for (int off = 0; off < n; ) {
+                ensure(1);
+                int len = Math.min(n - off, buffer.remaining());
+                buffer.get(ret, off, len);
+                off += len;
+            }
+            return ret;
+        }
+
+        int[] readInts(int n) throws IOException {
+            var ret = new int[n];
+            for (int off = 0; off < n; ) {
+                ensure(Integer.BYTES);
+                int len = Math.min(n - off, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().get(ret, off, len);
+                buffer.position(buffer.position() + len * Integer.BYTES);
+                off += len;
+            }
+            return ret;
+        }
+
+        long[] readLongs(int n) throws IOException {
+            var ret = new long[n];
+            for (int off = 0; off < n; ) {
+                ensure(Long.BYTES);
+                int len = Math.min(n - off, buffer.remaining() / Long.BYTES);
+                buffer.asLongBuffer().get(ret, off, len);
+                buffer.position(buffer.position() + len * Long.BYTES);
+                off += len;
+            }
+            return ret;
+        }
+
+        float[] readFloats(int n) throws IOException {
+            var ret = new float[n];
+            for (int off = 0; off < n; ) {
+                ensure(Float.BYTES);
+                int len = Math.min(n - off, buffer.remaining() / Float.BYTES);
+                buffer.asFloatBuffer().get(ret, off, len);
+                buffer.position(buffer.position() + len * Float.BYTES);
+                off += len;
+            }
+            return ret;
+        }
+    }
+}
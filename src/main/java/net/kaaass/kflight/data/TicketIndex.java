@@ -0,0 +1,107 @@
+package net.kaaass.kflight.data;
+
+import net.kaaass.kflight.data.entry.EntryFlight;
+import net.kaaass.kflight.data.entry.EntryTicketOrder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * 航班机票表的手机号索引
+ * <p>
+ * 票号在航班内递增分配，退票后不再重排；删除时以表尾机票填补空位，购票、退票均为 O(1)。
+ * 首次使用时由机票表建立，此后机票表须仅经由本索引修改。非线程安全，调用方须持有航班锁
+ */
+public class TicketIndex {
+
+    private final EntryFlight flight;
+
+    private HashMap<String, List<EntryTicketOrder>> byPhone = null;
+
+    /**
+     * 机票在机票表中的下标
+     */
+    private IdentityHashMap<EntryTicketOrder, Integer> position;
+
+    private int nextId = 0;
+
+    public TicketIndex(EntryFlight flight) {
+        this.flight = flight;
+    }
+
+    /**
+     * 加入机票并分配票号
+     */
+    public void add(EntryTicketOrder order) {
+        build();
+        var tickets = flight.getTickets();
+        order.setID(nextId++);
+        position.put(order, tickets.size());
+        tickets.add(order);
+        byPhone.computeIfAbsent(order.getPhone(), key -> new ArrayList<>(1)).add(order);
+    }
+
+    /**
+     * 加入已有票号的机票，用于恢复数据
+     */
+    public void restore(EntryTicketOrder order) {
+        build();
+        var tickets = flight.getTickets();
+        nextId = Math.max(nextId, order.getID() + 1);
+        position.put(order, tickets.size());
+        tickets.add(order);
+        byPhone.computeIfAbsent(order.getPhone(), key -> new ArrayList<>(1)).add(order);
+    }
+
+    /**
+     * 查找手机号对应的机票
+     */
+    public List<EntryTicketOrder> findByPhone(String phone) {
+        build();
+        var ret = byPhone.get(phone);
+        return ret == null ? new ArrayList<>() : new ArrayList<>(ret);
+    }
+
+    /**
+     * 移除手机号对应的全部机票
+     *
+     * @return 被移除的机票
+     */
+    public List<EntryTicketOrder> removeByPhone(String phone) {
+        build();
+        var found = byPhone.remove(phone);
+        if (found == null)
+            return new ArrayList<>();
+        var tickets = flight.getTickets();
+        for (var order : found) {
+            int pos = position.remove(order);
+            var last = tickets.remove(tickets.size() - 1);
+            if (last != order) {
+                tickets.set(pos, last);
+                position.put(last, pos);
+            }
+        }
+        return found;
+    }
+
+    private void build() {
+        if (byPhone != null)
+            return;
+        byPhone = new HashMap<>();
+        position = new IdentityHashMap<>();
+        var tickets = flight.getTickets();
+        for (var order : tickets) {
+            if (order.getID() != null)
+                nextId = Math.max(nextId, order.getID() + 1);
+        }
+        for (int i = 0; i < tickets.size(); i++) {
+            var order = tickets.get(i);
+            if (order.getID() == null)
+                order.setID(nextId++);
+            position.put(order, i);
+            byPhone.computeIfAbsent(order.getPhone(), key -> new ArrayList<>(1)).add(order);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package net.kaaass.kflight.data;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 追加写的预写日志
+ * <p>
+ * 每条记录为 [长度][CRC32][内容]。追加仅将记录放入待写列表，由后台线程成组写入并 fsync，
+ * 同一批次内的记录共享一次刷盘；调用方通过 await 等待记录落盘。
+ * 重放时遇到不完整或校验失败的记录即停止，打开时截去该尾部
+ */
+@Slf4j
+public class WriteAheadLog implements Closeable {
+
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * 单条记录的最大长度，超过视为损坏
+     */
+    private static final int MAX_RECORD_SIZE = 64 << 20;
+
+    private final FileChannel channel;
+
+    private final Thread flusher;
+
+    private final Object lock = new Object();
+
+    private List<byte[]> pending = new ArrayList<>();
+
+    /**
+     * 已追加的记录序号
+     */
+    private long appended = 0;
+
+    /**
+     * 已落盘的记录序号
+     */
+    private long durable = 0;
+
+    /**
+     * 刷盘失败的原因，失败后日志不再写入
+     */
+    private volatile IOException failure = null;
+
+    private boolean closed = false;
+
+    /**
+     * 打开日志，将已有记录依次交给 consumer 重放，截去损坏的尾部并启动刷盘线程
+     */
+    public WriteAheadLog(Path file, Consumer<byte[]> consumer) throws IOException {
+        long valid = Files.exists(file) ? replay(file, consumer) : 0;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() > valid) {
+            log.warn("预写日志 {} 尾部 {} 字节损坏，已截去", file, channel.size() - valid);
+            channel.truncate(valid);
+            channel.force(true);
+        }
+        channel.position(valid);
+        flusher = new Thread(this::flushLoop, "kflight-wal");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * 按顺序读取日志中的全部有效记录
+     *
+     * @return 有效部分的字节数
+     */
+    public static long replay(Path file, Consumer<byte[]> consumer) throws IOException {
+        long valid = 0;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            var crc = new CRC32();
+            while (true) {
+                int length;
+                int checksum;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_SIZE)
+                        break;
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum)
+                    break;
+                consumer.accept(payload);
+                valid += HEADER_SIZE + length;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * 刷盘是否已失败。失败后追加的记录不会落盘，调用方应在变更前检查
+     */
+    public boolean hasFailed() {
+        return failure != null;
+    }
+
+    /**
+     * 追加记录，不等待落盘
+     * <p>
+     * 刷盘已失败时不抛出异常，记录被丢弃，等待其落盘时抛出失败原因
+     *
+     * @return 记录序号
+     */
+    public long append(byte[] payload) {
+        synchronized (lock) {
+            if (failure != null)
+                return ++appended;
+            if (closed)
+                throw new IllegalStateException("write-ahead log is closed");
+            pending.add(payload);
+            lock.notifyAll();
+            return ++appended;
+        }
+    }
+
+    /**
+     * 等待序号不大于 seq 的记录落盘
+     */
+    public void await(long seq) throws IOException {
+        synchronized (lock) {
+            while (durable < seq && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while waiting for write-ahead log", e);
+                }
+            }
+            if (durable < seq)
+                throw failure;
+        }
+    }
+
+    /**
+     * 写入剩余记录并关闭
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (channel.isOpen())
+            channel.close();
+        synchronized (lock) {
+            if (failure != null)
+                throw failure;
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<byte[]> batch;
+            long target;
+            synchronized (lock) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (pending.isEmpty())
+                    return;
+                batch = pending;
+                pending = new ArrayList<>();
+                target = appended;
+            }
+            try {
+                write(batch);
+                synchronized (lock) {
+                    durable = target;
+                    lock.notifyAll();
+                }
+            } catch (IOException e) {
+                log.error("预写日志写入失败", e);
+                synchronized (lock) {
+                    failure = e;
+                    closed = true;
+                    lock.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    private void write(List<byte[]> batch) throws IOException {
+        int size = 0;
+        for (var payload : batch)
+            size += HEADER_SIZE + payload.length;
+        var buffer = ByteBuffer.allocate(size);
+        var crc = new CRC32();
+        for (var payload : batch) {
+            crc.reset();
+            crc.update(payload);
+            buffer.putInt(payload.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(payload);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        channel.force(false);
+    }
+}
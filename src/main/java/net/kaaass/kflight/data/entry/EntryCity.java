@@ -18,6 +18,15 @@ public class EntryCity implements IEntry {
     @NonNull
     final String name;
 
+    /**
+     * 城市编号，由 CityService 在添加时分配，从 0 开始连续编号
+     * <p>
+     * 索引与航线规划中以编号代替城市名比较；未添加的城市为 -1
+     */
+    @Setter
+    @JsonIgnore
+    int id = -1;
+
     /**
      * 平均票价
      */
@@ -1,9 +1,12 @@
 package net.kaaass.kflight.data.entry;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.*;
+import net.kaaass.kflight.data.TicketIndex;
+import net.kaaass.kflight.data.structure.MPSCQueue;
 import net.kaaass.kflight.util.EntryCityDeserializer;
 import net.kaaass.kflight.util.EntryCitySerializer;
 import net.kaaass.kflight.util.LocalDateTimeDeserializer;
@@ -13,6 +16,7 @@ import org.springframework.lang.Nullable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 @Getter
 @NoArgsConstructor
@@ -135,7 +139,7 @@ public class EntryFlight implements IEntry {
      * 剩余票数
      */
     @Setter
-    int restCabin;
+    volatile int restCabin;
 
     /**
      * 当前票价
@@ -148,4 +152,54 @@ public class EntryFlight implements IEntry {
      */
     @JsonManagedReference
     List<EntryTicketOrder> tickets = new ArrayList<>();
+
+    /**
+     * 机票的手机号索引
+     */
+    @JsonIgnore
+    @ToString.Exclude
+    final transient TicketIndex ticketIndex = new TicketIndex(this);
+
+    /**
+     * 排队购票的订单。任意线程可无锁入队，出队与遍历须持有航班锁
+     */
+    @JsonIgnore
+    @ToString.Exclude
+    final transient MPSCQueue<EntryTicketOrder> waitlist = new MPSCQueue<>();
+
+    private static final AtomicIntegerFieldUpdater<EntryFlight> REST_CABIN =
+            AtomicIntegerFieldUpdater.newUpdater(EntryFlight.class, "restCabin");
+
+    /**
+     * 原子地占用一张余票
+     *
+     * @return 占用前的余票数，若无余票则不占用并返回 0
+     */
+    public int takeCabin() {
+        return takeCabins(1);
+    }
+
+    /**
+     * 原子地占用至多 count 张余票
+     *
+     * @return 占用前的余票数，实际占用 min(返回值, count) 张；若无余票则返回 0
+     */
+    public int takeCabins(int count) {
+        int rest;
+        do {
+            rest = restCabin;
+            if (rest <= 0 || count <= 0)
+                return Math.max(rest, 0);
+        } while (!REST_CABIN.compareAndSet(this, rest, rest - Math.min(rest, count)));
+        return rest;
+    }
+
+    /**
+     * 原子地归还余票
+     *
+     * @return 归还前的余票数
+     */
+    public int releaseCabin(int count) {
+        return REST_CABIN.getAndAdd(this, count);
+    }
 }
@@ -0,0 +1,534 @@
+package net.kaaass.kflight.data.structure;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * B+ 树的简单实现
+ * <p>
+ * 节点以数组存放多个键，叶子节点双向链接，因此范围遍历是叶子上的顺序扫描。
+ * 内部节点记录各子树元素数，支持 O(log n) 的排名与选择。删除时只回收空节
+ * 点，不做节点合并，树高不会因删除而增加。
+ *
+ * @param <K> 查询下标类型
+ * @param <V> 存放内容类型
+ */
+public class BPlusTree<K, V> implements IOrderedStore<K, V> {
+
+    /**
+     * 默认节点容量
+     */
+    public static final int DEFAULT_ORDER = 64;
+
+    /**
+     * 查询下标比较器
+     */
+    private final Comparator<? super K> comparator;
+
+    /**
+     * 节点最多容纳的键（叶子）或子节点（内部节点）数
+     */
+    private final int order;
+
+    /**
+     * 树根
+     */
+    private Node root;
+
+    /**
+     * 元素数
+     */
+    private int size = 0;
+
+    /**
+     * 结构修改次数
+     */
+    private int modCount = 0;
+
+    /**
+     * 插入分裂时提升至父节点的分隔键
+     */
+    private K promoted;
+
+    /**
+     * 节点
+     */
+    private static abstract class Node {
+
+        /**
+         * 键数（叶子）或子节点数（内部节点）
+         */
+        int n = 0;
+    }
+
+    /**
+     * 叶子节点
+     */
+    private static final class Leaf extends Node {
+        final Object[] keys;
+        final Object[] values;
+        Leaf prev = null;
+        Leaf next = null;
+
+        Leaf(int order) {
+            // 多留一位，先插入后分裂
+            keys = new Object[order + 1];
+            values = new Object[order + 1];
+        }
+    }
+
+    /**
+     * 内部节点
+     * <p>
+     * 分隔键 keys[i] 不小于 children[i] 中的键，且不大于 children[i + 1] 中的键
+     */
+    private static final class Inner extends Node {
+        final Object[] keys;
+        final Node[] children;
+        final int[] counts;
+
+        Inner(int order) {
+            keys = new Object[order];
+            children = new Node[order + 1];
+            counts = new int[order + 1];
+        }
+    }
+
+    public BPlusTree(Comparator<? super K> comparator) {
+        this(comparator, DEFAULT_ORDER);
+    }
+
+    public BPlusTree(Comparator<? super K> comparator, int order) {
+        if (order < 3)
+            throw new IllegalArgumentException("B+ 树节点容量至少为 3");
+        this.comparator = comparator;
+        this.order = order;
+        this.root = new Leaf(order);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int modCount() {
+        return modCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(K key, Object other) {
+        return comparator.compare(key, (K) other);
+    }
+
+    /**
+     * 在 keys[0, n) 中找到第一个不小于 key 的位置
+     */
+    private int lowerBound(Object[] keys, int n, K key) {
+        int lf = 0, rt = n;
+        while (lf < rt) {
+            int mid = (lf + rt) >>> 1;
+            if (compare(key, keys[mid]) > 0)
+                lf = mid + 1;
+            else
+                rt = mid;
+        }
+        return lf;
+    }
+
+    /**
+     * 在 keys[0, n) 中找到第一个大于 key 的位置
+     */
+    private int upperBound(Object[] keys, int n, K key) {
+        int lf = 0, rt = n;
+        while (lf < rt) {
+            int mid = (lf + rt) >>> 1;
+            if (compare(key, keys[mid]) >= 0)
+                lf = mid + 1;
+            else
+                rt = mid;
+        }
+        return lf;
+    }
+
+    /**
+     * 获得子树元素数
+     */
+    private int countOf(Node node) {
+        if (node instanceof Leaf)
+            return node.n;
+        var inner = (Inner) node;
+        int ret = 0;
+        for (int i = 0; i < inner.n; i++)
+            ret += inner.counts[i];
+        return ret;
+    }
+
+    /**
+     * 插入操作，相同下标插入在已有元素之后
+     */
+    @Override
+    public void insert(K key, V value) {
+        if (key == null)
+            return;
+        modCount++;
+        var right = insert(root, key, value);
+        if (right != null) {
+            // 根节点分裂
+            var newRoot = new Inner(order);
+            newRoot.children[0] = root;
+            newRoot.children[1] = right;
+            newRoot.counts[0] = countOf(root);
+            newRoot.counts[1] = countOf(right);
+            newRoot.keys[0] = promoted;
+            newRoot.n = 2;
+            root = newRoot;
+        }
+        size++;
+    }
+
+    /**
+     * 向子树插入
+     *
+     * @return 若节点分裂，返回新的右侧节点，分隔键存于 promoted
+     */
+    private Node insert(Node node, K key, V value) {
+        if (node instanceof Leaf) {
+            var leaf = (Leaf) node;
+            int pos = upperBound(leaf.keys, leaf.n, key);
+            System.arraycopy(leaf.keys, pos, leaf.keys, pos + 1, leaf.n - pos);
+            System.arraycopy(leaf.values, pos, leaf.values, pos + 1, leaf.n - pos);
+            leaf.keys[pos] = key;
+            leaf.values[pos] = value;
+            leaf.n++;
+            return leaf.n > order ? splitLeaf(leaf) : null;
+        }
+        var inner = (Inner) node;
+        int i = upperBound(inner.keys, inner.n - 1, key);
+        inner.counts[i]++;
+        var right = insert(inner.children[i], key, value);
+        if (right == null)
+            return null;
+        // 子节点分裂，将右侧节点插入 i + 1
+        System.arraycopy(inner.children, i + 1, inner.children, i + 2, inner.n - i - 1);
+        System.arraycopy(inner.counts, i + 1, inner.counts, i + 2, inner.n - i - 1);
+        System.arraycopy(inner.keys, i, inner.keys, i + 1, inner.n - 1 - i);
+        inner.children[i + 1] = right;
+        inner.keys[i] = promoted;
+        inner.counts[i] = countOf(inner.children[i]);
+        inner.counts[i + 1] = countOf(right);
+        inner.n++;
+        return inner.n > order ? splitInner(inner) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Leaf splitLeaf(Leaf leaf) {
+        var right = new Leaf(order);
+        int mid = leaf.n >>> 1;
+        right.n = leaf.n - mid;
+        System.arraycopy(leaf.keys, mid, right.keys, 0, right.n);
+        System.arraycopy(leaf.values, mid, right.values, 0, right.n);
+        for (int i = mid; i < leaf.n; i++) {
+            leaf.keys[i] = null;
+            leaf.values[i] = null;
+        }
+        leaf.n = mid;
+        // 链接叶子
+        right.next = leaf.next;
+        if (right.next != null)
+            right.next.prev = right;
+        right.prev = leaf;
+        leaf.next = right;
+        promoted = (K) right.keys[0];
+        return right;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Inner splitInner(Inner inner) {
+        var right = new Inner(order);
+        int mid = inner.n >>> 1;
+        right.n = inner.n - mid;
+        System.arraycopy(inner.children, mid, right.children, 0, right.n);
+        System.arraycopy(inner.counts, mid, right.counts, 0, right.n);
+        System.arraycopy(inner.keys, mid, right.keys, 0, right.n - 1);
+        promoted = (K) inner.keys[mid - 1];
+        for (int i = mid; i < inner.n; i++) {
+            inner.children[i] = null;
+            inner.keys[i - 1] = null;
+        }
+        inner.n = mid;
+        return right;
+    }
+
+    /**
+     * 由有序键值对逐层建立
+     * <p>
+     * 先将元素均匀装入叶子，再逐层将节点均匀分组为父节点，分隔键取右侧子树的最小键
+     */
+    @Override
+    public void build(List<K> keys, List<V> values) {
+        int n = keys.size();
+        modCount++;
+        size = n;
+        if (n == 0) {
+            root = new Leaf(order);
+            return;
+        }
+        // 叶子层
+        var nodes = new ArrayList<Node>();
+        var mins = new ArrayList<Object>();
+        int groups = (n + order - 1) / order;
+        Leaf prev = null;
+        for (int g = 0, pos = 0; g < groups; g++) {
+            var leaf = new Leaf(order);
+            leaf.n = sizeOfGroup(n, groups, g);
+            for (int i = 0; i < leaf.n; i++, pos++) {
+                leaf.keys[i] = keys.get(pos);
+                leaf.values[i] = values.get(pos);
+            }
+            leaf.prev = prev;
+            if (prev != null)
+                prev.next = leaf;
+            prev = leaf;
+            nodes.add(leaf);
+            mins.add(leaf.keys[0]);
+        }
+        // 内部节点层
+        while (nodes.size() > 1) {
+            int count = nodes.size();
+            groups = (count + order - 1) / order;
+            var parents = new ArrayList<Node>(groups);
+            var parentMins = new ArrayList<Object>(groups);
+            for (int g = 0, pos = 0; g < groups; g++) {
+                var inner = new Inner(order);
+                inner.n = sizeOfGroup(count, groups, g);
+                for (int i = 0; i < inner.n; i++, pos++) {
+                    inner.children[i] = nodes.get(pos);
+                    inner.counts[i] = countOf(nodes.get(pos));
+                    if (i > 0)
+                        inner.keys[i - 1] = mins.get(pos);
+                }
+                parents.add(inner);
+                parentMins.add(mins.get(pos - inner.n));
+            }
+            nodes = parents;
+            mins = parentMins;
+        }
+        root = nodes.get(0);
+    }
+
+    /**
+     * 将 total 个元素均匀分为 groups 组时，第 g 组的大小
+     */
+    private static int sizeOfGroup(int total, int groups, int g) {
+        return total / groups + (g < total % groups ? 1 : 0);
+    }
+
+    /**
+     * 删除某一键值对
+     */
+    @Override
+    public boolean deletePair(K key, V value) {
+        if (!delete(root, key, value))
+            return false;
+        modCount++;
+        size--;
+        // 根节点只剩一个子节点时降低树高
+        while (root instanceof Inner && root.n == 1)
+            root = ((Inner) root).children[0];
+        if (root instanceof Inner && root.n == 0)
+            root = new Leaf(order);
+        return true;
+    }
+
+    /**
+     * 从子树中删除键值对，并回收空节点
+     */
+    private boolean delete(Node node, K key, V value) {
+        if (node instanceof Leaf) {
+            var leaf = (Leaf) node;
+            for (int pos = lowerBound(leaf.keys, leaf.n, key);
+                 pos < leaf.n && compare(key, leaf.keys[pos]) == 0; pos++) {
+                if (leaf.values[pos].equals(value)) {
+                    System.arraycopy(leaf.keys, pos + 1, leaf.keys, pos, leaf.n - pos - 1);
+                    System.arraycopy(leaf.values, pos + 1, leaf.values, pos, leaf.n - pos - 1);
+                    leaf.n--;
+                    leaf.keys[leaf.n] = null;
+                    leaf.values[leaf.n] = null;
+                    return true;
+                }
+            }
+            return false;
+        }
+        var inner = (Inner) node;
+        // 重复键可能跨越多个子节点
+        int lo = lowerBound(inner.keys, inner.n - 1, key);
+        int hi = upperBound(inner.keys, inner.n - 1, key);
+        for (int i = lo; i <= hi; i++) {
+            var child = inner.children[i];
+            if (delete(child, key, value)) {
+                inner.counts[i]--;
+                if (child.n == 0)
+                    removeChild(inner, i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 移除内部节点的第 i 个子节点
+     */
+    private void removeChild(Inner inner, int i) {
+        var child = inner.children[i];
+        if (child instanceof Leaf) {
+            // 断开叶子链接
+            var leaf = (Leaf) child;
+            if (leaf.prev != null)
+                leaf.prev.next = leaf.next;
+            if (leaf.next != null)
+                leaf.next.prev = leaf.prev;
+        }
+        System.arraycopy(inner.children, i + 1, inner.children, i, inner.n - i - 1);
+        System.arraycopy(inner.counts, i + 1, inner.counts, i, inner.n - i - 1);
+        int sep = i > 0 ? i - 1 : 0;
+        if (inner.n > 1)
+            System.arraycopy(inner.keys, sep + 1, inner.keys, sep, inner.n - 2 - sep);
+        inner.n--;
+        inner.children[inner.n] = null;
+        if (inner.n > 0)
+            inner.keys[inner.n - 1] = null;
+    }
+
+    /**
+     * 获得从第一个不小于 key 的元素开始遍历的迭代器
+     */
+    private LeafIterator iteratorFrom(K key) {
+        var node = root;
+        while (node instanceof Inner) {
+            var inner = (Inner) node;
+            node = inner.children[lowerBound(inner.keys, inner.n - 1, key)];
+        }
+        var leaf = (Leaf) node;
+        return new LeafIterator(leaf, lowerBound(leaf.keys, leaf.n, key));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V findValue(K key) {
+        var it = iteratorFrom(key);
+        if (!it.hasNext() || compare(key, it.leaf.keys[it.pos]) != 0)
+            return null;
+        return (V) it.leaf.values[it.pos];
+    }
+
+    @Override
+    public boolean has(K key) {
+        var it = iteratorFrom(key);
+        return it.hasNext() && compare(key, it.leaf.keys[it.pos]) == 0;
+    }
+
+    @Override
+    public boolean has(K key, V value) {
+        var it = iteratorFrom(key);
+        while (it.hasNext() && compare(key, it.leaf.keys[it.pos]) == 0) {
+            if (it.next().equals(value))
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int rank(K key) {
+        int ret = 0;
+        var node = root;
+        while (node instanceof Inner) {
+            var inner = (Inner) node;
+            int i = lowerBound(inner.keys, inner.n - 1, key);
+            for (int j = 0; j < i; j++)
+                ret += inner.counts[j];
+            node = inner.children[i];
+        }
+        return ret + lowerBound(((Leaf) node).keys, node.n, key);
+    }
+
+    @Override
+    public int rankUpper(K key) {
+        int ret = 0;
+        var node = root;
+        while (node instanceof Inner) {
+            var inner = (Inner) node;
+            int i = upperBound(inner.keys, inner.n - 1, key);
+            for (int j = 0; j < i; j++)
+                ret += inner.counts[j];
+            node = inner.children[i];
+        }
+        return ret + upperBound(((Leaf) node).keys, node.n, key);
+    }
+
+    @Override
+    public Iterator<V> iteratorAt(int k) {
+        if (k < 0 || k >= size)
+            return new LeafIterator(null, 0);
+        var node = root;
+        while (node instanceof Inner) {
+            var inner = (Inner) node;
+            int i = 0;
+            while (k >= inner.counts[i]) {
+                k -= inner.counts[i];
+                i++;
+            }
+            node = inner.children[i];
+        }
+        return new LeafIterator((Leaf) node, k);
+    }
+
+    /**
+     * 沿叶子链表顺序遍历的迭代器
+     */
+    private final class LeafIterator implements Iterator<V> {
+        Leaf leaf;
+        int pos;
+
+        LeafIterator(Leaf leaf, int pos) {
+            this.leaf = leaf;
+            this.pos = pos;
+            skipEnd();
+        }
+
+        /**
+         * 越过叶子末尾时移动至下一叶子
+         */
+        private void skipEnd() {
+            while (leaf != null && pos >= leaf.n) {
+                leaf = leaf.next;
+                pos = 0;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return leaf != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (leaf == null)
+                throw new NoSuchElementException();
+            var value = (V) leaf.values[pos++];
+            skipEnd();
+            return value;
+        }
+    }
+
+    @Override
+    public void clear() {
+        root = new Leaf(order);
+        size = 0;
+        modCount++;
+    }
+}
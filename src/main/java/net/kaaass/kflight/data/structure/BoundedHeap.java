@@ -0,0 +1,109 @@
+package net.kaaass.kflight.data.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 有界堆，保留比较意义下最小的至多 capacity 个元素
+ * <p>
+ * 以最大堆实现，堆顶为当前保留元素中最差者；插入 O(log k)，内存 O(k)
+ *
+ * @param <S> 元素类型
+ */
+public class BoundedHeap<S> {
+
+    private final Object[] heap;
+
+    private final Comparator<? super S> comparator;
+
+    private int size = 0;
+
+    public BoundedHeap(int capacity, Comparator<? super S> comparator) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.heap = new Object[capacity];
+        this.comparator = comparator;
+    }
+
+    /**
+     * 提交元素
+     *
+     * @return 是否被保留
+     */
+    public boolean offer(S value) {
+        if (size < heap.length) {
+            heap[size] = value;
+            siftUp(size++);
+            return true;
+        }
+        if (comparator.compare(value, elementAt(0)) >= 0)
+            return false;
+        heap[0] = value;
+        siftDown(0);
+        return true;
+    }
+
+    /**
+     * 获得元素数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 获得保留元素中最差者
+     */
+    public S peekWorst() {
+        return size == 0 ? null : elementAt(0);
+    }
+
+    /**
+     * 将保留元素按升序存储于列表
+     */
+    @SuppressWarnings("unchecked")
+    public List<S> toSortedList() {
+        var arr = (S[]) Arrays.copyOf(heap, size);
+        Arrays.sort(arr, comparator);
+        return new ArrayList<>(Arrays.asList(arr));
+    }
+
+    @SuppressWarnings("unchecked")
+    private S elementAt(int i) {
+        return (S) heap[i];
+    }
+
+    private void siftUp(int i) {
+        var value = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (compare(value, heap[parent]) <= 0)
+                break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = value;
+    }
+
+    private void siftDown(int i) {
+        var value = heap[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && compare(heap[right], heap[child]) > 0)
+                child = right;
+            if (compare(value, heap[child]) >= 0)
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object a, Object b) {
+        return comparator.compare((S) a, (S) b);
+    }
+}
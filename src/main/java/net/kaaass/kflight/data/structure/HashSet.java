@@ -2,18 +2,37 @@ package net.kaaass.kflight.data.structure;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
- * 基于红黑树的哈希集合，不允许重复元素
+ * 开放定址（线性探测）的哈希集合，不允许重复元素与 null
+ * <p>
+ * 插入与查询期望 O(1)，不支持删除
  */
 public class HashSet<S> {
 
-    private RBTree<Integer, S> tree;
+    private final static int DEFAULT_CAPACITY = 16;
+
+    /**
+     * 装载因子，线性探测下取较低值以缩短探测序列
+     */
+    private final static float LOAD_FACTOR = 0.5f;
+
+    private Object[] table;
+
+    private int size;
+
+    private int threshold;
 
     public HashSet() {
-        tree = new RBTree<>(Integer::compareTo);
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 以预期元素数创建集合
+     */
+    public HashSet(int expectedSize) {
+        allocate(capacityFor(expectedSize));
     }
 
     /**
@@ -22,13 +41,15 @@ public class HashSet<S> {
      * @return 是否成功
      */
     public boolean insert(S value) {
-        var hash = value.hashCode();
-
-        // 检查重复
-        if (inSet(value))
-            return false;
-        // 若无重复则插入
-        tree.insert(hash, value);
+        int mask = table.length - 1;
+        int i = indexOf(value.hashCode(), mask);
+        for (Object cur; (cur = table[i]) != null; i = (i + 1) & mask) {
+            if (cur.equals(value))
+                return false;
+        }
+        table[i] = value;
+        if (++size > threshold)
+            rehash(table.length << 1);
         return true;
     }
 
@@ -36,6 +57,9 @@ public class HashSet<S> {
      * 将另一集合的所有元素加入本集合
      */
     public void addAll(HashSet<S> anotherSet) {
+        int capacity = capacityFor(size + anotherSet.size);
+        if (capacity > table.length)
+            rehash(capacity);
         anotherSet.forEach(this::insert);
     }
 
@@ -43,13 +67,11 @@ public class HashSet<S> {
      * 检查元素是否在集合内
      */
     public boolean inSet(S value) {
-        var hash = value.hashCode();
-        var cur = tree.findLowerBound(hash);
-        if (cur != null) {
-            for (; cur != null && cur.getKey().equals(hash); cur = tree.nextOf(cur)) {
-                if (cur.getValue().equals(value))
-                    return true;
-            }
+        int mask = table.length - 1;
+        int i = indexOf(value.hashCode(), mask);
+        for (Object cur; (cur = table[i]) != null; i = (i + 1) & mask) {
+            if (cur.equals(value))
+                return true;
         }
         return false;
     }
@@ -58,70 +80,94 @@ public class HashSet<S> {
      * 获得集合大小
      */
     public int size() {
-        return tree.size();
-    }
-
-    /**
-     * 节点遍历
-     */
-    public void forEachNode(Consumer<RBTree.TreeNode<Integer, S>> consumer) {
-        var cur = tree.getMinimumNode();
-        if (cur != null) {
-            for (; cur != null; cur = tree.nextOf(cur)) {
-                consumer.accept(cur);
-            }
-        }
+        return size;
     }
 
     /**
      * 元素遍历
      */
+    @SuppressWarnings("unchecked")
     public void forEach(Consumer<S> consumer) {
-        forEachNode(node -> consumer.accept(node.value));
+        for (Object cur : table) {
+            if (cur != null)
+                consumer.accept((S) cur);
+        }
     }
 
     /**
-     * 将集合中全部元素以哈希升序存储于列表
+     * 将集合中全部元素存储于列表，顺序不定
      */
     public List<S> toList() {
-        var ret = new ArrayList<S>();
+        var ret = new ArrayList<S>(size);
         forEach(ret::add);
         return ret;
     }
 
     /**
-     * 将集合中全部元素以哈希升序存储于列表，键为哈希
-     */
-    public List<RBTree.TreeNode<Integer, S>> toNodeList() {
-        var ret = new ArrayList<RBTree.TreeNode<Integer, S>>();
-        forEachNode(ret::add);
-        return ret;
-    }
-
-    /**
-     * 非常缓慢的集合比较
+     * 集合比较，O(n)
      */
     @Override
+    @SuppressWarnings("unchecked")
     public boolean equals(Object obj) {
         if (obj == null)
             throw new NullPointerException();
+        if (this == obj)
+            return true;
         if (!(obj instanceof HashSet))
             return false;
         var aSet = (HashSet<S>) obj;
-        // 循环判断 O(m * n)
-        var ret = new AtomicBoolean(true);
-        forEach(el -> {
-            if (ret.get()) {
-                var flag = new AtomicBoolean(false);
-                aSet.forEach(other -> {
-                    if (!flag.get() && el.equals(other)) {
-                        flag.set(true);
-                    }
-                });
-                if (!flag.get())
-                    ret.set(false);
+        if (size != aSet.size)
+            return false;
+        for (Object cur : table) {
+            if (cur != null && !aSet.inSet((S) cur))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int ret = 0;
+        for (Object cur : table) {
+            if (cur != null)
+                ret += cur.hashCode();
+        }
+        return ret;
+    }
+
+    /**
+     * 扰动哈希并取得槽位
+     */
+    static int indexOf(int hash, int mask) {
+        hash *= 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * 计算容纳若干元素所需的容量，为 2 的幂
+     */
+    static int capacityFor(int expectedSize) {
+        int need = (int) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR);
+        int capacity = Integer.highestOneBit(need - 1) << 1;
+        return Math.max(capacity, 2);
+    }
+
+    private void allocate(int capacity) {
+        table = new Object[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        var old = table;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (Object cur : old) {
+            if (cur != null) {
+                int i = indexOf(cur.hashCode(), mask);
+                while (table[i] != null)
+                    i = (i + 1) & mask;
+                table[i] = cur;
             }
-        });
-        return ret.get();
+        }
     }
 }
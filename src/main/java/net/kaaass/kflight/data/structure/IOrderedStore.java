@@ -0,0 +1,79 @@
+package net.kaaass.kflight.data.structure;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 允许重复键的有序存储，作为索引的底层结构
+ * <p>
+ * 相同键的元素按插入顺序排列，所有元素按键升序编排名（从 0 开始）
+ *
+ * @param <K> 查询下标类型
+ * @param <V> 存放内容类型
+ */
+public interface IOrderedStore<K, V> {
+
+    /**
+     * 获得元素数
+     */
+    int size();
+
+    /**
+     * 获得结构修改次数，用于遍历时检测并发修改
+     */
+    int modCount();
+
+    /**
+     * 插入键值对
+     */
+    void insert(K key, V value);
+
+    /**
+     * 以按键升序排列的键值对替换全部内容，自底向上建立，耗时 O(n)
+     * <p>
+     * 相同键的元素按列表中的顺序排列
+     */
+    void build(List<K> keys, List<V> values);
+
+    /**
+     * 删除某一键值对
+     */
+    boolean deletePair(K key, V value);
+
+    /**
+     * 通过 key 找到一个值，若重复，则找到其中一个
+     *
+     * @return 若找不到则返回 null
+     */
+    V findValue(K key);
+
+    /**
+     * 是否存在 key
+     */
+    boolean has(K key);
+
+    /**
+     * 是否存在键值对
+     */
+    boolean has(K key, V value);
+
+    /**
+     * 获得小于 key 的元素数
+     */
+    int rank(K key);
+
+    /**
+     * 获得不大于 key 的元素数
+     */
+    int rankUpper(K key);
+
+    /**
+     * 获得从排名 k 开始按升序遍历的迭代器
+     */
+    Iterator<V> iteratorAt(int k);
+
+    /**
+     * 清空内容
+     */
+    void clear();
+}
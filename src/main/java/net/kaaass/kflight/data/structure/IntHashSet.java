@@ -0,0 +1,175 @@
+package net.kaaass.kflight.data.structure;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * int 特化的开放定址哈希集合，用于城市编号等整数元素，避免装箱
+ * <p>
+ * 插入与查询期望 O(1)，不支持删除
+ */
+public class IntHashSet {
+
+    private final static int DEFAULT_CAPACITY = 16;
+
+    private final static float LOAD_FACTOR = 0.5f;
+
+    /**
+     * 空槽标记。该值本身是否在集合内由 hasFreeKey 记录
+     */
+    private final static int FREE = Integer.MIN_VALUE;
+
+    private int[] table;
+
+    private boolean hasFreeKey;
+
+    private int size;
+
+    private int threshold;
+
+    public IntHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 以预期元素数创建集合
+     */
+    public IntHashSet(int expectedSize) {
+        allocate(HashSet.capacityFor(expectedSize));
+    }
+
+    /**
+     * 向集合插入元素
+     *
+     * @return 是否成功
+     */
+    public boolean insert(int value) {
+        if (value == FREE) {
+            if (hasFreeKey)
+                return false;
+            hasFreeKey = true;
+            size++;
+            return true;
+        }
+        int mask = table.length - 1;
+        int i = HashSet.indexOf(value, mask);
+        for (int cur; (cur = table[i]) != FREE; i = (i + 1) & mask) {
+            if (cur == value)
+                return false;
+        }
+        table[i] = value;
+        if (++size > threshold)
+            rehash(table.length << 1);
+        return true;
+    }
+
+    /**
+     * 将另一集合的所有元素加入本集合
+     */
+    public void addAll(IntHashSet anotherSet) {
+        int capacity = HashSet.capacityFor(size + anotherSet.size);
+        if (capacity > table.length)
+            rehash(capacity);
+        anotherSet.forEach(this::insert);
+    }
+
+    /**
+     * 检查元素是否在集合内
+     */
+    public boolean inSet(int value) {
+        if (value == FREE)
+            return hasFreeKey;
+        int mask = table.length - 1;
+        int i = HashSet.indexOf(value, mask);
+        for (int cur; (cur = table[i]) != FREE; i = (i + 1) & mask) {
+            if (cur == value)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 获得集合大小
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 元素遍历
+     */
+    public void forEach(IntConsumer consumer) {
+        if (hasFreeKey)
+            consumer.accept(FREE);
+        for (int cur : table) {
+            if (cur != FREE)
+                consumer.accept(cur);
+        }
+    }
+
+    /**
+     * 将集合中全部元素存储于数组，顺序不定
+     */
+    public int[] toArray() {
+        var ret = new int[size];
+        int j = 0;
+        if (hasFreeKey)
+            ret[j++] = FREE;
+        for (int cur : table) {
+            if (cur != FREE)
+                ret[j++] = cur;
+        }
+        return ret;
+    }
+
+    /**
+     * 集合比较，O(n)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null)
+            throw new NullPointerException();
+        if (this == obj)
+            return true;
+        if (!(obj instanceof IntHashSet))
+            return false;
+        var aSet = (IntHashSet) obj;
+        if (size != aSet.size || hasFreeKey != aSet.hasFreeKey)
+            return false;
+        for (int cur : table) {
+            if (cur != FREE && !aSet.inSet(cur))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int ret = hasFreeKey ? FREE : 0;
+        for (int cur : table) {
+            if (cur != FREE)
+                ret += cur;
+        }
+        return ret;
+    }
+
+    private void allocate(int capacity) {
+        table = new int[capacity];
+        Arrays.fill(table, FREE);
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        var old = table;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int cur : old) {
+            if (cur != FREE) {
+                int i = HashSet.indexOf(cur, mask);
+                while (table[i] != FREE)
+                    i = (i + 1) & mask;
+                table[i] = cur;
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package net.kaaass.kflight.data.structure;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 有界 LRU 缓存，线程安全
+ * <p>
+ * 记录命中、未命中、淘汰与失效次数
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public class LRUCache<K, V> {
+
+    private final int capacity;
+
+    private final LinkedHashMap<K, V> map;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    private long evictions = 0;
+
+    private long invalidations = 0;
+
+    /**
+     * 失效版本，每次失效时递增，用于丢弃失效前开始计算的结果
+     */
+    private long version = 0;
+
+    public LRUCache(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > LRUCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 查找缓存，并计入命中统计
+     *
+     * @return 若不存在则返回 null
+     */
+    public synchronized V get(K key) {
+        var ret = map.get(key);
+        if (ret == null)
+            misses++;
+        else
+            hits++;
+        return ret;
+    }
+
+    /**
+     * 查找缓存，仅当值满足 usable 时视为命中
+     *
+     * @return 若不存在或不可用则返回 null
+     */
+    public synchronized V get(K key, Predicate<V> usable) {
+        var ret = map.get(key);
+        if (ret == null || !usable.test(ret)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return ret;
+    }
+
+    /**
+     * 放入缓存
+     */
+    public synchronized void put(K key, V value) {
+        map.put(key, value);
+    }
+
+    /**
+     * 放入缓存，若自 version 以来发生过失效则放弃
+     *
+     * @return 是否放入
+     */
+    public synchronized boolean putIfValid(K key, V value, long version) {
+        if (this.version != version)
+            return false;
+        map.put(key, value);
+        return true;
+    }
+
+    /**
+     * 使满足条件的缓存失效
+     *
+     * @return 失效条目数
+     */
+    public synchronized int invalidateIf(Predicate<K> predicate) {
+        version++;
+        int count = 0;
+        for (Iterator<K> it = map.keySet().iterator(); it.hasNext(); ) {
+            if (predicate.test(it.next())) {
+                it.remove();
+                count++;
+            }
+        }
+        invalidations += count;
+        return count;
+    }
+
+    /**
+     * 清空缓存，不计入失效统计
+     */
+    public synchronized void clear() {
+        version++;
+        map.clear();
+    }
+
+    public synchronized long version() {
+        return version;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized long invalidations() {
+        return invalidations;
+    }
+}
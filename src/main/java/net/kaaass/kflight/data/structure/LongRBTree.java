@@ -0,0 +1,578 @@
+package net.kaaass.kflight.data.structure;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 以 long 为下标的红黑树
+ * <p>
+ * 与 {@link RBTree} 算法一致，但下标以原始类型存储与比较，插入、比较与
+ * 查询均不装箱。int 下标可直接拓宽为 long 使用。
+ *
+ * @param <V> 存放内容类型
+ */
+public class LongRBTree<V> implements IOrderedStore<Long, V> {
+
+    /**
+     * 红黑树节点
+     */
+    static final class Node<V> {
+        long key;
+        V value;
+        Node<V> parent = null;
+        RBTree.NodeColor color = RBTree.NodeColor.BLACK;
+        Node<V> left = null;
+        Node<V> right = null;
+        /**
+         * 子树节点数
+         */
+        int count = 1;
+
+        Node(long key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 树根
+     */
+    private Node<V> root = null;
+
+    /**
+     * 红黑树元素数
+     */
+    private int size = 0;
+
+    /**
+     * 结构修改次数
+     */
+    private int modCount = 0;
+
+    /**
+     * 公共空子节点
+     */
+    private final Node<V> NULL = new Node<>(0, null);
+
+    public LongRBTree() {
+        NULL.count = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int modCount() {
+        return modCount;
+    }
+
+    private boolean isNull(Node<V> node) {
+        return node == null || node == NULL;
+    }
+
+    private boolean notNull(Node<V> node) {
+        return !isNull(node);
+    }
+
+    private int countOf(Node<V> node) {
+        return isNull(node) ? 0 : node.count;
+    }
+
+    private void updateCount(Node<V> node) {
+        node.count = countOf(node.left) + countOf(node.right) + 1;
+    }
+
+    /**
+     * 寻找某节点在红黑树内的下一个节点
+     */
+    Node<V> nextOf(Node<V> curNode) {
+        if (isNull(curNode))
+            return null;
+        if (notNull(curNode.right)) {
+            var cur = curNode.right;
+            while (notNull(cur.left))
+                cur = cur.left;
+            return cur;
+        }
+        var prev = curNode.parent;
+        var cur = curNode;
+        while (notNull(prev) && cur == prev.right) {
+            cur = prev;
+            prev = prev.parent;
+        }
+        return isNull(prev) ? null : prev;
+    }
+
+    private Node<V> getMinimumNode(Node<V> cur) {
+        if (notNull(cur)) {
+            while (notNull(cur.left))
+                cur = cur.left;
+        }
+        return isNull(cur) ? null : cur;
+    }
+
+    private void leftRotate(Node<V> x) {
+        if (notNull(x)) {
+            var y = x.right;
+            x.right = y.left;
+            if (notNull(y.left))
+                y.left.parent = x;
+            y.parent = x.parent;
+            if (isNull(x.parent))
+                this.root = y;
+            else if (x == x.parent.left)
+                x.parent.left = y;
+            else
+                x.parent.right = y;
+            y.left = x;
+            x.parent = y;
+            y.count = x.count;
+            updateCount(x);
+        }
+    }
+
+    private void rightRotate(Node<V> y) {
+        if (notNull(y)) {
+            var x = y.left;
+            y.left = x.right;
+            if (notNull(x.right))
+                x.right.parent = y;
+            x.parent = y.parent;
+            if (isNull(y.parent))
+                root = x;
+            else if (y == y.parent.right)
+                y.parent.right = x;
+            else
+                y.parent.left = x;
+            x.right = y;
+            y.parent = x;
+            x.count = y.count;
+            updateCount(y);
+        }
+    }
+
+    /**
+     * 插入操作，相同下标插入在已有节点之后
+     */
+    public void insert(long key, V value) {
+        var x = root;
+        Node<V> y = null;
+        var z = new Node<>(key, value);
+        z.left = z.right = NULL;
+        modCount++;
+
+        while (notNull(x)) {
+            y = x;
+            x.count++;
+            if (key < x.key)
+                x = x.left;
+            else
+                x = x.right;
+        }
+        z.parent = y;
+        if (isNull(y)) {
+            root = z;
+            size = 1;
+            return;
+        } else if (key < y.key)
+            y.left = z;
+        else
+            y.right = z;
+        z.color = RBTree.NodeColor.RED;
+        insertFixup(z);
+        size++;
+    }
+
+    /**
+     * 由有序键值对建立平衡树，与 {@link RBTree#build} 相同
+     */
+    public void build(long[] keys, List<V> values) {
+        int n = values.size();
+        modCount++;
+        size = n;
+        int redLevel = n > 1 ? 31 - Integer.numberOfLeadingZeros(n) : -1;
+        var ret = build(keys, values, 0, n, 0, redLevel);
+        root = isNull(ret) ? null : ret;
+    }
+
+    private Node<V> build(long[] keys, List<V> values, int lo, int hi, int depth, int redLevel) {
+        if (lo >= hi)
+            return NULL;
+        int mid = (lo + hi) >>> 1;
+        var node = new Node<>(keys[mid], values.get(mid));
+        node.left = build(keys, values, lo, mid, depth + 1, redLevel);
+        node.right = build(keys, values, mid + 1, hi, depth + 1, redLevel);
+        if (notNull(node.left))
+            node.left.parent = node;
+        if (notNull(node.right))
+            node.right.parent = node;
+        node.color = depth == redLevel ? RBTree.NodeColor.RED : RBTree.NodeColor.BLACK;
+        node.count = hi - lo;
+        return node;
+    }
+
+    private void insertFixup(Node<V> z) {
+        while (notNull(z) && z != root && z.parent.color == RBTree.NodeColor.RED) {
+            if (z.parent == z.parent.parent.left) {
+                var y = z.parent.parent.right;
+                if (y.color == RBTree.NodeColor.RED) {
+                    z.parent.color = RBTree.NodeColor.BLACK;
+                    y.color = RBTree.NodeColor.BLACK;
+                    z.parent.parent.color = RBTree.NodeColor.RED;
+                    z = z.parent.parent;
+                } else {
+                    if (z == z.parent.right) {
+                        z = z.parent;
+                        leftRotate(z);
+                    }
+                    z.parent.color = RBTree.NodeColor.BLACK;
+                    z.parent.parent.color = RBTree.NodeColor.RED;
+                    rightRotate(z.parent.parent);
+                }
+            } else {
+                var y = z.parent.parent.left;
+                if (y.color == RBTree.NodeColor.RED) {
+                    z.parent.color = RBTree.NodeColor.BLACK;
+                    y.color = RBTree.NodeColor.BLACK;
+                    z.parent.parent.color = RBTree.NodeColor.RED;
+                    z = z.parent.parent;
+                } else {
+                    if (z == z.parent.left) {
+                        z = z.parent;
+                        rightRotate(z);
+                    }
+                    z.parent.color = RBTree.NodeColor.BLACK;
+                    z.parent.parent.color = RBTree.NodeColor.RED;
+                    leftRotate(z.parent.parent);
+                }
+            }
+        }
+        root.color = RBTree.NodeColor.BLACK;
+    }
+
+    private void transplant(Node<V> u, Node<V> v) {
+        if (isNull(u.parent))
+            root = v;
+        else if (u == u.parent.left)
+            u.parent.left = v;
+        else
+            u.parent.right = v;
+        v.parent = u.parent;
+    }
+
+    private void delete(Node<V> z) {
+        if (isNull(z))
+            return;
+        modCount++;
+        Node<V> x;
+        var y = z;
+        var yOriginColor = y.color;
+        Node<V> fixCount;
+        if (isNull(z.left)) {
+            x = z.right;
+            fixCount = z.parent;
+            transplant(z, z.right);
+        } else if (isNull(z.right)) {
+            x = z.left;
+            fixCount = z.parent;
+            transplant(z, z.left);
+        } else {
+            y = getMinimumNode(z.right);
+            yOriginColor = y.color;
+            x = y.right;
+            if (y.parent == z) {
+                x.parent = y;
+                fixCount = y;
+            } else {
+                fixCount = y.parent;
+                transplant(y, y.right);
+                y.right = z.right;
+                y.right.parent = y;
+            }
+            transplant(z, y);
+            y.left = z.left;
+            y.left.parent = y;
+            y.color = z.color;
+        }
+        for (; notNull(fixCount); fixCount = fixCount.parent)
+            updateCount(fixCount);
+        size--;
+        if (yOriginColor == RBTree.NodeColor.BLACK)
+            deleteFixup(x);
+    }
+
+    private void deleteFixup(Node<V> x) {
+        while (x != root && x.color == RBTree.NodeColor.BLACK) {
+            if (x == x.parent.left) {
+                var w = x.parent.right;
+                if (w.color == RBTree.NodeColor.RED) {
+                    w.color = RBTree.NodeColor.BLACK;
+                    x.parent.color = RBTree.NodeColor.RED;
+                    leftRotate(x.parent);
+                    w = x.parent.right;
+                }
+                if (w.left.color == RBTree.NodeColor.BLACK &&
+                        w.right.color == RBTree.NodeColor.BLACK) {
+                    w.color = RBTree.NodeColor.RED;
+                    x = x.parent;
+                } else {
+                    if (w.right.color == RBTree.NodeColor.BLACK) {
+                        w.left.color = RBTree.NodeColor.BLACK;
+                        w.color = RBTree.NodeColor.RED;
+                        rightRotate(w);
+                        w = x.parent.right;
+                    }
+                    w.color = x.parent.color;
+                    x.parent.color = RBTree.NodeColor.BLACK;
+                    w.right.color = RBTree.NodeColor.BLACK;
+                    leftRotate(x.parent);
+                    x = root;
+                }
+            } else {
+                var w = x.parent.left;
+                if (w.color == RBTree.NodeColor.RED) {
+                    w.color = RBTree.NodeColor.BLACK;
+                    x.parent.color = RBTree.NodeColor.RED;
+                    rightRotate(x.parent);
+                    w = x.parent.left;
+                }
+                if (w.left.color == RBTree.NodeColor.BLACK &&
+                        w.right.color == RBTree.NodeColor.BLACK) {
+                    w.color = RBTree.NodeColor.RED;
+                    x = x.parent;
+                } else {
+                    if (w.left.color == RBTree.NodeColor.BLACK) {
+                        w.right.color = RBTree.NodeColor.BLACK;
+                        w.color = RBTree.NodeColor.RED;
+                        leftRotate(w);
+                        w = x.parent.left;
+                    }
+                    w.color = x.parent.color;
+                    x.parent.color = RBTree.NodeColor.BLACK;
+                    w.left.color = RBTree.NodeColor.BLACK;
+                    rightRotate(x.parent);
+                    x = root;
+                }
+            }
+        }
+        x.color = RBTree.NodeColor.BLACK;
+    }
+
+    /**
+     * 找到下标不小于 key 的最小节点
+     */
+    private Node<V> findLowerBound(long key) {
+        Node<V> ret = null;
+        var cur = root;
+        while (notNull(cur)) {
+            if (key <= cur.key) {
+                ret = cur;
+                cur = cur.left;
+            } else {
+                cur = cur.right;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * 删除某一键值对
+     */
+    public boolean deletePair(long key, V val) {
+        for (var cur = findLowerBound(key); cur != null && cur.key == key; cur = nextOf(cur)) {
+            if (cur.value.equals(val)) {
+                delete(cur);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 通过 key 找到一个值，若重复，则找到其中一个
+     *
+     * @return 若找不到则返回 null
+     */
+    public V findValue(long key) {
+        var cur = root;
+        while (notNull(cur)) {
+            if (key < cur.key)
+                cur = cur.left;
+            else if (key > cur.key)
+                cur = cur.right;
+            else
+                return cur.value;
+        }
+        return null;
+    }
+
+    /**
+     * 树中是否存在 key
+     */
+    public boolean has(long key) {
+        var cur = root;
+        while (notNull(cur)) {
+            if (key < cur.key)
+                cur = cur.left;
+            else if (key > cur.key)
+                cur = cur.right;
+            else
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 树中是否存在键值对
+     */
+    public boolean has(long key, V val) {
+        for (var cur = findLowerBound(key); cur != null && cur.key == key; cur = nextOf(cur)) {
+            if (cur.value.equals(val))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 获得小于 key 的节点数
+     */
+    public int rank(long key) {
+        int ret = 0;
+        var cur = root;
+        while (notNull(cur)) {
+            if (key <= cur.key) {
+                cur = cur.left;
+            } else {
+                ret += countOf(cur.left) + 1;
+                cur = cur.right;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * 获得不大于 key 的节点数
+     */
+    public int rankUpper(long key) {
+        int ret = 0;
+        var cur = root;
+        while (notNull(cur)) {
+            if (key < cur.key) {
+                cur = cur.left;
+            } else {
+                ret += countOf(cur.left) + 1;
+                cur = cur.right;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * 获得下标在 [low, high] 内的节点数
+     */
+    public int countBetween(long low, long high) {
+        return Math.max(0, rankUpper(high) - rank(low));
+    }
+
+    /**
+     * 获得排名为 k 的节点（从 0 开始）
+     */
+    Node<V> select(int k) {
+        if (k < 0 || k >= countOf(root))
+            return null;
+        var cur = root;
+        while (notNull(cur)) {
+            int leftCount = countOf(cur.left);
+            if (k < leftCount) {
+                cur = cur.left;
+            } else if (k > leftCount) {
+                k -= leftCount + 1;
+                cur = cur.right;
+            } else {
+                return cur;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Iterator<V> iteratorAt(int k) {
+        var start = select(k);
+        return new Iterator<>() {
+            Node<V> cur = start;
+
+            @Override
+            public boolean hasNext() {
+                return cur != null;
+            }
+
+            @Override
+            public V next() {
+                if (cur == null)
+                    throw new NoSuchElementException();
+                var value = cur.value;
+                cur = nextOf(cur);
+                return value;
+            }
+        };
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        size = 0;
+        modCount++;
+    }
+
+    /*
+    装箱接口，仅供通用调用方使用
+     */
+
+    @Override
+    public void insert(Long key, V value) {
+        if (key == null)
+            return;
+        insert(key.longValue(), value);
+    }
+
+    @Override
+    public void build(List<Long> keys, List<V> values) {
+        var raw = new long[keys.size()];
+        for (int i = 0; i < raw.length; i++)
+            raw[i] = keys.get(i);
+        build(raw, values);
+    }
+
+    @Override
+    public boolean deletePair(Long key, V value) {
+        return deletePair(key.longValue(), value);
+    }
+
+    @Override
+    public V findValue(Long key) {
+        return findValue(key.longValue());
+    }
+
+    @Override
+    public boolean has(Long key) {
+        return has(key.longValue());
+    }
+
+    @Override
+    public boolean has(Long key, V value) {
+        return has(key.longValue(), value);
+    }
+
+    @Override
+    public int rank(Long key) {
+        return rank(key.longValue());
+    }
+
+    @Override
+    public int rankUpper(Long key) {
+        return rankUpper(key.longValue());
+    }
+}
@@ -0,0 +1,109 @@
+package net.kaaass.kflight.data.structure;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * 无锁多生产者多消费者队列
+ * <p>
+ * 以 Michael-Scott 算法实现，入队、出队均以 CAS 完成，任意线程均可调用。遍历为弱一致
+ *
+ * @param <S> 元素类型
+ */
+public class MPMCQueue<S> {
+
+    private static class Node<S> {
+
+        final S data;
+
+        final AtomicReference<Node<S>> next = new AtomicReference<>();
+
+        Node(S data) {
+            this.data = data;
+        }
+    }
+
+    /**
+     * 哨兵节点，其后为队首
+     */
+    private final AtomicReference<Node<S>> head;
+
+    private final AtomicReference<Node<S>> tail;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    public MPMCQueue() {
+        var stub = new Node<S>(null);
+        head = new AtomicReference<>(stub);
+        tail = new AtomicReference<>(stub);
+    }
+
+    public void push(S data) {
+        var node = new Node<>(data);
+        size.incrementAndGet();
+        while (true) {
+            var last = tail.get();
+            var next = last.next.get();
+            if (last != tail.get())
+                continue;
+            if (next != null) {
+                // 队尾落后，帮助推进
+                tail.compareAndSet(last, next);
+            } else if (last.next.compareAndSet(null, node)) {
+                tail.compareAndSet(last, node);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 出队
+     *
+     * @return 若队列为空则返回 null
+     */
+    public S popFront() {
+        while (true) {
+            var first = head.get();
+            var last = tail.get();
+            var next = first.next.get();
+            if (first != head.get())
+                continue;
+            if (next == null)
+                return null;
+            if (first == last) {
+                tail.compareAndSet(last, next);
+            } else if (head.compareAndSet(first, next)) {
+                size.decrementAndGet();
+                return next.data;
+            }
+        }
+    }
+
+    public S front() {
+        var next = head.get().next.get();
+        return next == null ? null : next.data;
+    }
+
+    /**
+     * 获得元素数。含正在入队的元素，可能略大于可出队的元素数
+     */
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isEmpty() {
+        return head.get().next.get() == null;
+    }
+
+    /**
+     * 按入队顺序遍历，弱一致
+     */
+    public void forEach(Consumer<S> consumer) {
+        for (var it = head.get().next.get();
+             it != null;
+             it = it.next.get()) {
+            consumer.accept(it.data);
+        }
+    }
+}
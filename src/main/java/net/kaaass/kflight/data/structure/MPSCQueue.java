@@ -0,0 +1,108 @@
+package net.kaaass.kflight.data.structure;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * 无锁多生产者单消费者队列
+ * <p>
+ * 任意线程均可无锁入队；出队、查看队首与遍历须由单一线程执行，或由调用方保证互斥。
+ * 入队以交换队尾实现，交换后、链接前的短暂窗口内该元素对消费者不可见
+ *
+ * @param <S> 元素类型
+ */
+public class MPSCQueue<S> {
+
+    private static class Node<S> {
+
+        S data;
+
+        volatile Node<S> next = null;
+
+        Node(S data) {
+            this.data = data;
+        }
+    }
+
+    /**
+     * 哨兵节点，其后为队首。仅由消费者修改
+     */
+    private Node<S> head;
+
+    private final AtomicReference<Node<S>> tail;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    public MPSCQueue() {
+        var stub = new Node<S>(null);
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+
+    /**
+     * 入队，可由任意线程调用
+     */
+    public void push(S data) {
+        var node = new Node<>(data);
+        size.incrementAndGet();
+        var prev = tail.getAndSet(node);
+        prev.next = node;
+    }
+
+    /**
+     * 出队，仅限消费者调用
+     *
+     * @return 若队列为空则返回 null
+     */
+    public S popFront() {
+        var next = head.next;
+        if (next == null)
+            return null;
+        var ret = next.data;
+        next.data = null;
+        head = next;
+        size.decrementAndGet();
+        return ret;
+    }
+
+    /**
+     * 查看队首，仅限消费者调用
+     */
+    public S front() {
+        var next = head.next;
+        return next == null ? null : next.data;
+    }
+
+    /**
+     * 获得元素数。含正在入队的元素，可能略大于可出队的元素数
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * 队列是否为空，仅限消费者调用
+     */
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+
+    /**
+     * 清空队列，仅限消费者调用。正在入队的元素可能保留
+     */
+    public void clear() {
+        while (popFront() != null) ;
+    }
+
+    /**
+     * 按入队顺序遍历，仅限消费者调用
+     */
+    public void forEach(Consumer<S> consumer) {
+        for (var it = head.next;
+             it != null;
+             it = it.next) {
+            consumer.accept(it.data);
+        }
+    }
+}
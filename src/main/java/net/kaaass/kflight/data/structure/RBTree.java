@@ -6,14 +6,19 @@ import lombok.Getter;
 import lombok.ToString;
 
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * 红黑树的简单实现
+ * <p>
+ * 节点维护子树大小，支持 O(log n) 的排名、选择与区间计数
  *
  * @param <K> 查询下标类型
  * @param <V> 存放内容类型
  */
-public class RBTree<K, V> {
+public class RBTree<K, V> implements IOrderedStore<K, V> {
 
     /**
      * 查询下标比较器，建立偏序关系
@@ -30,17 +35,32 @@ public class RBTree<K, V> {
      */
     private int size = 0;
 
+    /**
+     * 结构修改次数，用于遍历时检测并发修改
+     */
+    private int modCount = 0;
+
     public RBTree(Comparator<? super K> comparator) {
         this.comparator = comparator;
+        NULL.count = 0;
     }
 
     /**
      * 获得红黑树元素数
      */
+    @Override
     public int size() {
         return size;
     }
 
+    /**
+     * 获得结构修改次数
+     */
+    @Override
+    public int modCount() {
+        return modCount;
+    }
+
     /**
      * 红黑树节点颜色
      */
@@ -62,6 +82,10 @@ public class RBTree<K, V> {
         NodeColor color = NodeColor.BLACK;
         TreeNode<K, V> left = null;
         TreeNode<K, V> right = null;
+        /**
+         * 子树节点数
+         */
+        int count = 1;
 
         public TreeNode(K key, V value) {
             this.key = key;
@@ -74,6 +98,20 @@ public class RBTree<K, V> {
      */
     private final TreeNode<K, V> NULL = new TreeNode<>(null, null);
 
+    /**
+     * 获得子树节点数
+     */
+    private int countOf(TreeNode<K, V> node) {
+        return isNull(node) ? 0 : node.count;
+    }
+
+    /**
+     * 由子节点重新计算子树节点数
+     */
+    private void updateCount(TreeNode<K, V> node) {
+        node.count = countOf(node.left) + countOf(node.right) + 1;
+    }
+
     /**
      * 判断是否为空节点
      */
@@ -154,7 +192,7 @@ public class RBTree<K, V> {
             while (notNull(cur.left))
                 cur = cur.left;
         }
-        return cur;
+        return isNull(cur) ? null : cur;
     }
 
     /**
@@ -167,7 +205,7 @@ public class RBTree<K, V> {
             while (notNull(cur.right))
                 cur = cur.right;
         }
-        return cur;
+        return isNull(cur) ? null : cur;
     }
 
     /*
@@ -199,6 +237,9 @@ public class RBTree<K, V> {
                 x.parent.right = y;
             y.left = x;
             x.parent = y;
+            // 维护子树大小
+            y.count = x.count;
+            updateCount(x);
         }
     }
 
@@ -222,6 +263,9 @@ public class RBTree<K, V> {
                 y.parent.left = x;
             x.right = y;
             y.parent = x;
+            // 维护子树大小
+            x.count = y.count;
+            updateCount(y);
         }
     }
 
@@ -230,6 +274,7 @@ public class RBTree<K, V> {
      * <p>
      * 代码参考自《算法导论》
      */
+    @Override
     public void insert(K key, V value) {
         if (key == null)
             return;
@@ -238,9 +283,11 @@ public class RBTree<K, V> {
         TreeNode<K, V> y = null;
         var z = new TreeNode<>(key, value);
         z.left = z.right = NULL;
+        modCount++;
 
         while (notNull(x)) {
             y = x;
+            x.count++; // 新节点位于 x 的子树中
             if (cmp.compare(z.key, x.key) < 0)
                 x = x.left;
             else
@@ -309,6 +356,43 @@ public class RBTree<K, V> {
         root.color = NodeColor.BLACK;
     }
 
+    /**
+     * 由有序键值对建立平衡树
+     * <p>
+     * 每段取中点为根递归建立，最深一层为红色、其余为黑色，各路径黑高相同
+     */
+    @Override
+    public void build(List<K> keys, List<V> values) {
+        int n = keys.size();
+        modCount++;
+        size = n;
+        // 中点划分时树高为 floor(log2 n)，仅一个节点时根为黑色
+        int redLevel = n > 1 ? 31 - Integer.numberOfLeadingZeros(n) : -1;
+        var ret = build(keys, values, 0, n, 0, redLevel);
+        root = isNull(ret) ? null : ret;
+        if (root != null)
+            root.parent = null;
+    }
+
+    /**
+     * 由 [lo, hi) 内的键值对建立子树
+     */
+    private TreeNode<K, V> build(List<K> keys, List<V> values, int lo, int hi, int depth, int redLevel) {
+        if (lo >= hi)
+            return NULL;
+        int mid = (lo + hi) >>> 1;
+        var node = new TreeNode<>(keys.get(mid), values.get(mid));
+        node.left = build(keys, values, lo, mid, depth + 1, redLevel);
+        node.right = build(keys, values, mid + 1, hi, depth + 1, redLevel);
+        if (notNull(node.left))
+            node.left.parent = node;
+        if (notNull(node.right))
+            node.right.parent = node;
+        node.color = depth == redLevel ? NodeColor.RED : NodeColor.BLACK;
+        node.count = hi - lo;
+        return node;
+    }
+
     /**
      * 用 v 节点替换 u 节点
      */
@@ -330,15 +414,19 @@ public class RBTree<K, V> {
     public void delete(TreeNode<K, V> z) {
         if (isNull(z))
             return;
+        modCount++;
         TreeNode<K, V> x;
         var y = z;
         var yOriginColor = y.color;
+        TreeNode<K, V> fixCount; // 自此向上更新子树大小
         // 删除操作和正常二叉查找树删除类似
         if (isNull(z.left)) {
             x = z.right;
+            fixCount = z.parent;
             transplant(z, z.right);
         } else if (isNull(z.right)) {
             x = z.left;
+            fixCount = z.parent;
             transplant(z, z.left);
         } else {
             y = getMinimumNode(z.right);
@@ -346,7 +434,9 @@ public class RBTree<K, V> {
             x = y.right;
             if (y.parent == z) {
                 x.parent = y;
+                fixCount = y;
             } else {
+                fixCount = y.parent;
                 transplant(y, y.right);
                 y.right = z.right;
                 y.right.parent = y;
@@ -356,6 +446,8 @@ public class RBTree<K, V> {
             y.left.parent = y;
             y.color = z.color;
         }
+        for (; notNull(fixCount); fixCount = fixCount.parent)
+            updateCount(fixCount);
         size--;
         // 黑色节点的删除会破坏性质
         if (yOriginColor == NodeColor.BLACK)
@@ -368,7 +460,8 @@ public class RBTree<K, V> {
      * 代码参考自《算法导论》
      */
     private void deleteFixup(TreeNode<K, V> x) {
-        if (isNull(x))
+        // x 可能为公共空子节点，其 parent 已由 transplant 设置，需正常修复
+        if (x == null)
             return;
         while (x != root && x.color == NodeColor.BLACK) {
             if (x == x.parent.left) {
@@ -439,6 +532,7 @@ public class RBTree<K, V> {
     /**
      * 删除某一键值对
      */
+    @Override
     public boolean deletePair(K key, V val) {
         var cur = findLowerBound(key);
         if (isNull(cur))
@@ -474,6 +568,17 @@ public class RBTree<K, V> {
         return null;
     }
 
+    /**
+     * 通过 key 找到一个值，若重复，则找到其中一个
+     *
+     * @return 若找不到则返回 null
+     */
+    @Override
+    public V findValue(K key) {
+        var node = findOne(key);
+        return node == null ? null : node.value;
+    }
+
     /**
      * 找到小于 key 的最大节点
      *
@@ -562,6 +667,109 @@ public class RBTree<K, V> {
         return prevOf(next);
     }
 
+    /**
+     * 获得小于 key 的节点数，即 key 的下界在树中的排名
+     */
+    @Override
+    public int rank(K key) {
+        int ret = 0;
+        var cur = root;
+        while (notNull(cur)) {
+            if (comparator.compare(key, cur.key) <= 0) {
+                cur = cur.left;
+            } else {
+                ret += countOf(cur.left) + 1;
+                cur = cur.right;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * 获得不大于 key 的节点数
+     */
+    @Override
+    public int rankUpper(K key) {
+        int ret = 0;
+        var cur = root;
+        while (notNull(cur)) {
+            if (comparator.compare(key, cur.key) < 0) {
+                cur = cur.left;
+            } else {
+                ret += countOf(cur.left) + 1;
+                cur = cur.right;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * 获得节点在树中的排名（从 0 开始）
+     */
+    public int rankOf(TreeNode<K, V> node) {
+        int ret = countOf(node.left);
+        for (var cur = node; notNull(cur.parent); cur = cur.parent) {
+            if (cur == cur.parent.right)
+                ret += countOf(cur.parent.left) + 1;
+        }
+        return ret;
+    }
+
+    /**
+     * 获得排名为 k 的节点（从 0 开始）
+     *
+     * @return 若越界则返回 null
+     */
+    public TreeNode<K, V> select(int k) {
+        if (k < 0 || k >= countOf(root))
+            return null;
+        var cur = root;
+        while (notNull(cur)) {
+            int leftCount = countOf(cur.left);
+            if (k < leftCount) {
+                cur = cur.left;
+            } else if (k > leftCount) {
+                k -= leftCount + 1;
+                cur = cur.right;
+            } else {
+                return cur;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获得从排名 k 开始按升序遍历的迭代器
+     */
+    @Override
+    public Iterator<V> iteratorAt(int k) {
+        var start = select(k);
+        return new Iterator<>() {
+            TreeNode<K, V> cur = start;
+
+            @Override
+            public boolean hasNext() {
+                return cur != null;
+            }
+
+            @Override
+            public V next() {
+                if (cur == null)
+                    throw new NoSuchElementException();
+                var value = cur.value;
+                cur = nextOf(cur);
+                return value;
+            }
+        };
+    }
+
+    /**
+     * 获得下标在 [low, high] 内的节点数
+     */
+    public int countBetween(K low, K high) {
+        return Math.max(0, rankUpper(high) - rank(low));
+    }
+
     /**
      * 比较两节点在树中的位置
      */
@@ -585,6 +793,7 @@ public class RBTree<K, V> {
     /**
      * 树中是否存在 key
      */
+    @Override
     public boolean has(K key) {
         return notNull(findOne(key));
     }
@@ -592,6 +801,7 @@ public class RBTree<K, V> {
     /**
      * 树中是否存在键值对
      */
+    @Override
     public boolean has(K key, V val) {
         var cur = findLowerBound(key);
         if (isNull(cur))
@@ -608,7 +818,10 @@ public class RBTree<K, V> {
     /**
      * 清空树内容
      */
+    @Override
     public void clear() {
         root = null;
+        size = 0;
+        modCount++;
     }
 }
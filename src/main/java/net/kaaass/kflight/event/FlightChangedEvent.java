@@ -0,0 +1,57 @@
+package net.kaaass.kflight.event;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import net.kaaass.kflight.data.entry.EntryCity;
+import net.kaaass.kflight.data.entry.EntryFlight;
+import net.kaaass.kflight.eventhandle.Event;
+import net.kaaass.kflight.eventhandle.ListenerList;
+
+import java.time.LocalDate;
+
+/**
+ * 航班变更事件
+ * <p>
+ * 航班增删、更新、状态或余票可售性变化时触发。起降城市与起飞日期在触发时记录，
+ * 不受航班对象之后的修改影响
+ */
+@Getter
+@NoArgsConstructor
+@ToString
+public class FlightChangedEvent extends Event {
+
+    private static final ListenerList LISTENERS = new ListenerList();
+
+    /**
+     * 变更航班
+     */
+    EntryFlight flight;
+
+    /**
+     * 起飞城市
+     */
+    EntryCity from;
+
+    /**
+     * 目的城市
+     */
+    EntryCity to;
+
+    /**
+     * 起飞日期
+     */
+    LocalDate date;
+
+    public FlightChangedEvent(EntryFlight flight) {
+        this.flight = flight;
+        this.from = flight.getFrom();
+        this.to = flight.getTo();
+        this.date = flight.getDepartureTime().toLocalDate();
+    }
+
+    @Override
+    public ListenerList getListenerList() {
+        return LISTENERS;
+    }
+}
@@ -6,6 +6,7 @@ import lombok.NoArgsConstructor;
 import lombok.ToString;
 import net.kaaass.kflight.data.entry.EntryFlight;
 import net.kaaass.kflight.eventhandle.Event;
+import net.kaaass.kflight.eventhandle.ListenerList;
 
 import java.util.Optional;
 
@@ -18,7 +19,14 @@ import java.util.Optional;
 @ToString
 public class FlightDelayedEvent extends Event {
 
+    private static final ListenerList LISTENERS = new ListenerList();
+
     EntryFlight delayed;
 
     Optional<EntryFlight> recommend;
+
+    @Override
+    public ListenerList getListenerList() {
+        return LISTENERS;
+    }
 }
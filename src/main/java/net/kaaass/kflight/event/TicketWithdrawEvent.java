@@ -6,6 +6,7 @@ import lombok.NoArgsConstructor;
 import lombok.ToString;
 import net.kaaass.kflight.data.entry.EntryFlight;
 import net.kaaass.kflight.eventhandle.Event;
+import net.kaaass.kflight.eventhandle.ListenerList;
 
 /**
  * 退票事件
@@ -16,6 +17,8 @@ import net.kaaass.kflight.eventhandle.Event;
 @ToString
 public class TicketWithdrawEvent extends Event {
 
+    private static final ListenerList LISTENERS = new ListenerList();
+
     /**
      * 退票航班
      */
@@ -25,4 +28,9 @@ public class TicketWithdrawEvent extends Event {
      * 退票电话
      */
     String phone;
+
+    @Override
+    public ListenerList getListenerList() {
+        return LISTENERS;
+    }
 }
@@ -6,9 +6,10 @@ import net.kaaass.kflight.data.Index;
 import net.kaaass.kflight.data.entry.EntryCity;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 
 /**
  * 城市数据管理
@@ -17,32 +18,62 @@ public class CityService {
 
     private static final CityService INSTANCE = new CityService();
 
+    private final static int INITIAL_CAPACITY = 64;
+
     private List<EntryCity> data;
 
+    /**
+     * 城市名索引，直接比较城市名，避免哈希碰撞
+     */
     @Getter
-    private Index<EntryCity, String, Integer> indexName;
+    private Index<EntryCity, String, String> indexName;
+
+    /**
+     * 编号查找表，下标即城市编号
+     */
+    private volatile EntryCity[] idTable;
+
+    /**
+     * 下一个分配的编号
+     */
+    private int nextId;
 
     private CityService() {
         data = new ArrayList<>();
-        indexName = new Index<>(EntryCity::getName, String::hashCode, Comparator.naturalOrder());
+        indexName = new Index<>(EntryCity::getName, Function.identity(), String::compareTo);
+        idTable = new EntryCity[INITIAL_CAPACITY];
+        nextId = 0;
     }
 
     /**
-     * 添加 entry
+     * 添加 entry，并为其分配城市编号
      */
     @Synchronized
     public static void addEntry(EntryCity entryCity) {
+        var table = INSTANCE.idTable;
+        int id = INSTANCE.nextId++;
+        if (id >= table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+        }
+        entryCity.setId(id);
+        table[id] = entryCity;
+        INSTANCE.idTable = table;
         INSTANCE.data.add(entryCity);
         INSTANCE.indexName.addIndexFor(entryCity);
     }
 
     /**
-     * 删除 entry
+     * 删除 entry，其编号不再复用
      */
     @Synchronized
     public static void removeEntry(EntryCity entryCity) {
         INSTANCE.data.remove(entryCity);
         INSTANCE.indexName.removeIndexFor(entryCity);
+        int id = entryCity.getId();
+        var table = INSTANCE.idTable;
+        if (id >= 0 && id < table.length && table[id] == entryCity) {
+            table[id] = null;
+        }
     }
 
     /**
@@ -52,6 +83,23 @@ public class CityService {
         return INSTANCE.indexName.findOne(name);
     }
 
+    /**
+     * 通过城市编号查找
+     */
+    public static Optional<EntryCity> findById(int id) {
+        var table = INSTANCE.idTable;
+        if (id < 0 || id >= table.length)
+            return Optional.empty();
+        return Optional.ofNullable(table[id]);
+    }
+
+    /**
+     * 获得已分配编号的上界，所有城市编号均小于该值
+     */
+    public static int idBound() {
+        return INSTANCE.nextId;
+    }
+
     /**
      * 获得所有城市信息
      */
@@ -62,9 +110,12 @@ public class CityService {
     /**
      * 清空城市数据
      */
+    @Synchronized
     public static void clear() {
         INSTANCE.data.clear();
         INSTANCE.indexName.clear();
+        INSTANCE.idTable = new EntryCity[INITIAL_CAPACITY];
+        INSTANCE.nextId = 0;
     }
 
     public static CityService getInstance() {
@@ -5,9 +5,11 @@ import lombok.Getter;
 import lombok.Synchronized;
 import lombok.extern.slf4j.Slf4j;
 import net.kaaass.kflight.KflightApplication;
+import net.kaaass.kflight.data.FlightAdjacency;
 import net.kaaass.kflight.data.Index;
 import net.kaaass.kflight.data.entry.EntryCity;
 import net.kaaass.kflight.data.entry.EntryFlight;
+import net.kaaass.kflight.event.FlightChangedEvent;
 import net.kaaass.kflight.event.FlightDelayedEvent;
 import net.kaaass.kflight.eventhandle.SubscribeEvent;
 import net.kaaass.kflight.exception.NotFoundException;
@@ -15,12 +17,12 @@ import net.kaaass.kflight.exception.NotFoundException;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 /**
  * 航班数据管理
@@ -28,7 +30,12 @@ import java.util.stream.Collectors;
 @Slf4j
 public class FlightService {
 
-    private final static String SEPARATOR = ";";
+
+    /**
+     * 索引存储结构，可通过系统属性 kflight.index.storage 切换以比较性能
+     */
+    private final static Index.Storage STORAGE =
+            Index.Storage.valueOf(System.getProperty("kflight.index.storage", Index.Storage.RB_TREE.name()));
 
     private static final FlightService INSTANCE;
 
@@ -47,13 +54,13 @@ public class FlightService {
      * 航班号索引
      */
     @Getter
-    private Index<EntryFlight, String, Integer> indexFlightNo;
+    private Index<EntryFlight, String, Long> indexFlightNo;
 
     /**
      * 航空公司索引
      */
     @Getter
-    private Index<EntryFlight, String, Integer> indexAirlineName;
+    private Index<EntryFlight, String, Long> indexAirlineName;
 
     /**
      * 起飞时间索引
@@ -67,35 +74,47 @@ public class FlightService {
     @Getter
     private Index<EntryFlight, LocalDateTime, Long> indexLandingTime;
 
+    /**
+     * 出港航班邻接表，供航线规划衔接查找
+     */
+    @Getter
+    private FlightAdjacency adjacency;
+
     /**
      * 城市时间索引
      */
     @Data
     public static final class CityTimeIndex {
-        final String cityName;
+        final long city;
         final LocalDateTime time;
 
-        Hash toHash() {
-            return new Hash(cityName.hashCode(), time.toEpochSecond(ZoneOffset.UTC));
+        Key toKey() {
+            return new Key(city, time.toEpochSecond(ZoneOffset.UTC));
+        }
+
+        static long idOf(EntryCity city) {
+            return city.getId();
         }
 
-        static String nameFromTo(EntryCity from, EntryCity to) {
-            return from.getName() + SEPARATOR + to.getName();
+        static long idFromTo(EntryCity from, EntryCity to) {
+            return ((long) from.getId() << 32) | (to.getId() & 0xffffffffL);
         }
 
         /**
-         * 索引哈希
+         * 索引键
+         * <p>
+         * 以城市编号、时间构成全序，不同城市不会交错，范围查询无需再过滤
          */
         @Data
-        public static final class Hash implements Comparable<Hash> {
-            final int nameHash;
-            final Long dateTime;
+        public static final class Key implements Comparable<Key> {
+            final long city;
+            final long dateTime;
 
             @Override
-            public int compareTo(Hash o) {
+            public int compareTo(Key o) {
                 if (o == null)
                     throw new NullPointerException();
-                int cmp = Integer.compare(nameHash, o.nameHash);
+                int cmp = Long.compare(city, o.city);
                 if (cmp == 0) {
                     cmp = Long.compare(dateTime, o.dateTime);
                 }
@@ -108,36 +127,38 @@ public class FlightService {
      * 起飞地索引
      */
     @Getter
-    private Index<EntryFlight, CityTimeIndex, CityTimeIndex.Hash> indexFromTime;
+    private Index<EntryFlight, CityTimeIndex, CityTimeIndex.Key> indexFromTime;
 
     /**
      * 降落地索引
      */
     @Getter
-    private Index<EntryFlight, CityTimeIndex, CityTimeIndex.Hash> indexToTime;
+    private Index<EntryFlight, CityTimeIndex, CityTimeIndex.Key> indexToTime;
 
     /**
      * 起降地索引
      */
     @Getter
-    private Index<EntryFlight, CityTimeIndex, CityTimeIndex.Hash> indexFromToTime;
+    private Index<EntryFlight, CityTimeIndex, CityTimeIndex.Key> indexFromToTime;
 
     private FlightService() {
         data = new ArrayList<>();
         // 索引初始化
-        indexFlightNo = new Index<>(EntryFlight::getFlightNo, String::hashCode, Comparator.naturalOrder());
-        indexAirlineName = new Index<>(EntryFlight::getAirlineName, String::hashCode, Comparator.naturalOrder());
-        indexDepartureTime = new Index<>(EntryFlight::getDepartureTime, time -> time.toEpochSecond(ZoneOffset.UTC), Comparator.<Long>naturalOrder());
-        indexLandingTime = new Index<>(EntryFlight::getLandingTime, time -> time.toEpochSecond(ZoneOffset.UTC), Comparator.<Long>naturalOrder());
+        // 数值键使用 long 索引，避免装箱
+        indexFlightNo = Index.ofLong(EntryFlight::getFlightNo, String::hashCode, STORAGE);
+        indexAirlineName = Index.ofLong(EntryFlight::getAirlineName, String::hashCode, STORAGE);
+        indexDepartureTime = Index.ofLong(EntryFlight::getDepartureTime, time -> time.toEpochSecond(ZoneOffset.UTC), STORAGE);
+        indexLandingTime = Index.ofLong(EntryFlight::getLandingTime, time -> time.toEpochSecond(ZoneOffset.UTC), STORAGE);
         // 城市&起飞时间索引
-        indexFromTime = new Index<>(flight -> new CityTimeIndex(flight.getFrom().getName(), flight.getDepartureTime()),
-                CityTimeIndex::toHash, CityTimeIndex.Hash::compareTo);
-        indexToTime = new Index<>(flight -> new CityTimeIndex(flight.getTo().getName(), flight.getDepartureTime()),
-                CityTimeIndex::toHash, CityTimeIndex.Hash::compareTo);
+        indexFromTime = new Index<>(flight -> new CityTimeIndex(CityTimeIndex.idOf(flight.getFrom()), flight.getDepartureTime()),
+                CityTimeIndex::toKey, CityTimeIndex.Key::compareTo, STORAGE);
+        indexToTime = new Index<>(flight -> new CityTimeIndex(CityTimeIndex.idOf(flight.getTo()), flight.getDepartureTime()),
+                CityTimeIndex::toKey, CityTimeIndex.Key::compareTo, STORAGE);
         indexFromToTime = new Index<>(flight ->
-                new CityTimeIndex(CityTimeIndex.nameFromTo(flight.getFrom(), flight.getTo()),
+                new CityTimeIndex(CityTimeIndex.idFromTo(flight.getFrom(), flight.getTo()),
                         flight.getDepartureTime()),
-                CityTimeIndex::toHash, CityTimeIndex.Hash::compareTo);
+                CityTimeIndex::toKey, CityTimeIndex.Key::compareTo, STORAGE);
+        adjacency = new FlightAdjacency();
     }
 
     /**
@@ -145,12 +166,41 @@ public class FlightService {
      */
     @Synchronized
     public static void addEntry(EntryFlight entryFlight) {
-        // 字段计算
-        entryFlight.setID(INSTANCE.data.size());
-        // 添加对象
-        INSTANCE.data.add(entryFlight);
-        // 增加索引
-        INSTANCE.addIndexFor(entryFlight);
+        PersistService.beginMutation();
+        try {
+            // 字段计算
+            entryFlight.setID(INSTANCE.data.size());
+            // 添加对象
+            INSTANCE.data.add(entryFlight);
+            PersistService.flightAdded(entryFlight);
+            // 增加索引
+            INSTANCE.addIndexFor(entryFlight);
+            INSTANCE.updateAvgPrice(entryFlight);
+            postChanged(entryFlight);
+        } finally {
+            PersistService.endMutation();
+        }
+    }
+
+    /**
+     * 批量添加 entry，一次加锁，索引批量建立，完成后统一使缓存失效
+     */
+    @Synchronized
+    public static void addEntries(List<EntryFlight> entryFlights) {
+        PersistService.beginMutation();
+        try {
+            for (var entryFlight : entryFlights) {
+                entryFlight.setID(INSTANCE.data.size());
+                INSTANCE.data.add(entryFlight);
+                PersistService.flightAdded(entryFlight);
+                INSTANCE.updateAvgPrice(entryFlight);
+            }
+            INSTANCE.addIndexFor(entryFlights);
+        } finally {
+            PersistService.endMutation();
+        }
+        PlanService.clearCache();
+        SearchCache.invalidateAll();
     }
 
     /**
@@ -158,9 +208,18 @@ public class FlightService {
      */
     @Synchronized
     public static void removeEntry(EntryFlight entryFlight) {
-        INSTANCE.data.remove(entryFlight);
-        INSTANCE.reId();
-        INSTANCE.removeIndexFor(entryFlight);
+        PersistService.beginMutation();
+        try {
+            INSTANCE.data.remove(entryFlight);
+            INSTANCE.reId();
+            PersistService.flightRemoved(entryFlight);
+            SearchCache.invalidateAll();
+            INSTANCE.removeIndexFor(entryFlight);
+            TicketService.removeQueue(entryFlight);
+            postChanged(entryFlight);
+        } finally {
+            PersistService.endMutation();
+        }
     }
 
     /**
@@ -174,15 +233,11 @@ public class FlightService {
      * 根据起降地与日期寻找航班
      */
     public static List<EntryFlight> findAllByFromToAndDate(EntryCity from, EntryCity to, LocalDate date) {
-        var start = new CityTimeIndex(CityTimeIndex.nameFromTo(from, to),
+        var start = new CityTimeIndex(CityTimeIndex.idFromTo(from, to),
                 date.atStartOfDay());
-        var end = new CityTimeIndex(CityTimeIndex.nameFromTo(from, to),
-                date.plusDays(1).atStartOfDay());
-        return INSTANCE.indexFromToTime
-                .findBetween(start, end)
-                .parallelStream()
-                .filter(flight -> flight.getFrom().equals(from) && flight.getTo().equals(to))
-                .collect(Collectors.toList());
+        var end = new CityTimeIndex(CityTimeIndex.idFromTo(from, to),
+                date.atTime(LocalTime.MAX));
+        return INSTANCE.indexFromToTime.findBetween(start, end);
     }
 
     /**
@@ -192,30 +247,50 @@ public class FlightService {
         return INSTANCE.indexDepartureTime.findBetween(start, end);
     }
 
+    /**
+     * 按起飞时间分页查找起飞时间在范围内的航班
+     */
+    public static List<EntryFlight> findBetween(LocalDateTime start, LocalDateTime end, int offset, int limit) {
+        return INSTANCE.indexDepartureTime.findBetween(start, end, offset, limit);
+    }
+
+    /**
+     * 统计起飞时间在范围内的航班数
+     */
+    public static int countBetween(LocalDateTime start, LocalDateTime end) {
+        return INSTANCE.indexDepartureTime.countBetween(start, end);
+    }
+
     /**
      * 查找起飞地点确定、起飞时间在某日期的航班
      */
     public static List<EntryFlight> findByFromAndDate(EntryCity city, LocalDate date) {
-        var start = new CityTimeIndex(city.getName(), date.atStartOfDay());
-        var end = new CityTimeIndex(city.getName(), date.plusDays(1).atStartOfDay());
-        return INSTANCE.indexFromTime
-                .findBetween(start, end)
-                .parallelStream()
-                .filter(flight -> flight.getFrom().equals(city))
-                .collect(Collectors.toList());
+        var start = new CityTimeIndex(CityTimeIndex.idOf(city), date.atStartOfDay());
+        var end = new CityTimeIndex(CityTimeIndex.idOf(city), date.atTime(LocalTime.MAX));
+        return INSTANCE.indexFromTime.findBetween(start, end);
     }
 
     /**
      * 查找着陆地点确定、起飞时间在某日期的航班
      */
     public static List<EntryFlight> findByToAndDate(EntryCity city, LocalDate date) {
-        var start = new CityTimeIndex(city.getName(), date.atStartOfDay());
-        var end = new CityTimeIndex(city.getName(), date.plusDays(1).atStartOfDay());
-        return INSTANCE.indexToTime
-                .findBetween(start, end)
-                .parallelStream()
-                .filter(flight -> flight.getTo().equals(city))
-                .collect(Collectors.toList());
+        var start = new CityTimeIndex(CityTimeIndex.idOf(city), date.atStartOfDay());
+        var end = new CityTimeIndex(CityTimeIndex.idOf(city), date.atTime(LocalTime.MAX));
+        return INSTANCE.indexToTime.findBetween(start, end);
+    }
+
+    /**
+     * 获得城市某日的出港航班，按起飞时间升序
+     */
+    public static FlightAdjacency.Slot findOutbound(EntryCity city, LocalDate date) {
+        return INSTANCE.adjacency.outbound(city, date);
+    }
+
+    /**
+     * 由城市编号获得城市某日的出港航班，按起飞时间升序
+     */
+    public static FlightAdjacency.Slot findOutbound(int city, LocalDate date) {
+        return INSTANCE.adjacency.outbound(city, date);
     }
 
     /**
@@ -228,13 +303,23 @@ public class FlightService {
     /**
      * 更新
      */
+    @Synchronized
     public static void updateById(int id, EntryFlight newFlight) throws NotFoundException {
-        var old = getById(id)
-                .orElseThrow(() -> new NotFoundException("未找到此ID的航班信息！"));
-        INSTANCE.removeIndexFor(old);
-        // 重建索引
-        INSTANCE.data.set(id, newFlight);
-        INSTANCE.addIndexFor(newFlight);
+        PersistService.beginMutation();
+        try {
+            var old = getById(id)
+                    .orElseThrow(() -> new NotFoundException("未找到此ID的航班信息！"));
+            INSTANCE.removeIndexFor(old);
+            // 重建索引
+            INSTANCE.data.set(id, newFlight);
+            PersistService.flightUpdated(old, newFlight);
+            INSTANCE.addIndexFor(newFlight);
+            INSTANCE.updateAvgPrice(newFlight);
+            postChanged(old);
+            postChanged(newFlight);
+        } finally {
+            PersistService.endMutation();
+        }
     }
 
     /**
@@ -260,12 +345,10 @@ public class FlightService {
     }
 
     /**
-     * 增加索引并计算平均票价
+     * 增加索引
      */
     private void addIndexFor(EntryFlight entryFlight) {
-        // 字段计算
-        entryFlight.setFlightTime(Duration.between(
-                entryFlight.getDepartureTime(), entryFlight.getLandingTime()).toSeconds());
+        computeFields(entryFlight);
         // 增加索引
         INSTANCE.indexFlightNo.addIndexFor(entryFlight);
         INSTANCE.indexAirlineName.addIndexFor(entryFlight);
@@ -274,7 +357,34 @@ public class FlightService {
         INSTANCE.indexFromTime.addIndexFor(entryFlight);
         INSTANCE.indexToTime.addIndexFor(entryFlight);
         INSTANCE.indexFromToTime.addIndexFor(entryFlight);
-        // 计算城市平均票价
+        INSTANCE.adjacency.add(entryFlight);
+    }
+
+    /**
+     * 批量增加索引
+     */
+    private void addIndexFor(List<EntryFlight> entryFlights) {
+        for (var entryFlight : entryFlights)
+            computeFields(entryFlight);
+        INSTANCE.adjacency.addAll(entryFlights);
+        // 各索引相互独立，并行建立后一并发布
+        Index.bulkLoadAll(List.of(INSTANCE.indexFlightNo, INSTANCE.indexAirlineName,
+                INSTANCE.indexDepartureTime, INSTANCE.indexLandingTime,
+                INSTANCE.indexFromTime, INSTANCE.indexToTime, INSTANCE.indexFromToTime), entryFlights);
+    }
+
+    /**
+     * 字段计算
+     */
+    private void computeFields(EntryFlight entryFlight) {
+        entryFlight.setFlightTime(Duration.between(
+                entryFlight.getDepartureTime(), entryFlight.getLandingTime()).toSeconds());
+    }
+
+    /**
+     * 计算城市平均票价
+     */
+    private void updateAvgPrice(EntryFlight entryFlight) {
         var from = entryFlight.getFrom();
         var avg = from.getAvgCnt();
         var price = from.getAvgPrice();
@@ -294,17 +404,13 @@ public class FlightService {
         var from = flight.getFrom();
         var to = flight.getTo();
 
-        var startHash = new CityTimeIndex.Hash(CityTimeIndex.nameFromTo(from, to).hashCode(),
+        var startKey = new CityTimeIndex.Key(CityTimeIndex.idFromTo(from, to),
                 flight.getDepartureTime().toEpochSecond(ZoneOffset.UTC));
-        var endHash = new CityTimeIndex.Hash(CityTimeIndex.nameFromTo(from, to).hashCode(),
+        var endKey = new CityTimeIndex.Key(CityTimeIndex.idFromTo(from, to),
                 Long.MAX_VALUE);
-        var fromTos = INSTANCE.indexFromToTime.findBetweenHash(startHash, endHash);
-
-        return fromTos.stream()
-                .filter(aFlight ->
-                        aFlight.getState() == EntryFlight.State.BOOKING &&
-                                aFlight.getFrom().equals(from) &&
-                                aFlight.getTo().equals(to))
+        // 惰性遍历，找到第一个即停止
+        return INSTANCE.indexFromToTime.scanHash(startKey, endKey)
+                .filter(aFlight -> aFlight.getState() == EntryFlight.State.BOOKING)
                 .findFirst();
     }
 
@@ -313,20 +419,37 @@ public class FlightService {
      *
      * @return 若航延，返回推荐航班
      */
+    @Synchronized
     public static EntryFlight changeState(int id,
                                           EntryFlight.State state,
                                           LocalDateTime delayTo) throws NotFoundException {
-        var flight = getById(id)
-                .orElseThrow(() -> new NotFoundException("未找到此ID的航班信息！"));
-        flight.setState(state);
-        if (state == EntryFlight.State.CANCELED || state == EntryFlight.State.DELAYED) {
-            var recommend = searchClosetFlight(flight);
-            if (delayTo != null)
-                flight.setDepartureTime(delayTo);
-            KflightApplication.EVENT_BUS.post(new FlightDelayedEvent(flight, recommend));
-            return recommend.orElse(null);
+        PersistService.beginMutation();
+        try {
+            var flight = getById(id)
+                    .orElseThrow(() -> new NotFoundException("未找到此ID的航班信息！"));
+            PersistService.stateChanged(flight, state, delayTo);
+            flight.setState(state);
+            postChanged(flight);
+            if (state == EntryFlight.State.CANCELED || state == EntryFlight.State.DELAYED) {
+                var recommend = searchClosetFlight(flight);
+                if (delayTo != null) {
+                    // 起降时间变化，须重建索引
+                    var delay = Duration.between(flight.getDepartureTime(), delayTo);
+                    INSTANCE.removeIndexFor(flight);
+                    flight.setDepartureTime(delayTo);
+                    flight.setLandingTime(flight.getLandingTime().plus(delay));
+                    INSTANCE.addIndexFor(flight);
+                    postChanged(flight);
+                }
+                // 重放日志时通知已在变更当时发出
+                if (!PersistService.isReplaying())
+                    KflightApplication.EVENT_BUS.post(new FlightDelayedEvent(flight, recommend));
+                return recommend.orElse(null);
+            }
+            return null;
+        } finally {
+            PersistService.endMutation();
         }
-        return null;
     }
 
     @SubscribeEvent
@@ -356,12 +479,14 @@ public class FlightService {
         INSTANCE.indexFromTime.removeIndexFor(entryFlight);
         INSTANCE.indexToTime.removeIndexFor(entryFlight);
         INSTANCE.indexFromToTime.removeIndexFor(entryFlight);
+        INSTANCE.adjacency.remove(entryFlight);
     }
 
     /**
      * 清空航班数据
      */
     public static void clear() {
+        TicketService.clearQueue();
         INSTANCE.data.clear();
         INSTANCE.indexFlightNo.clear();
         INSTANCE.indexAirlineName.clear();
@@ -370,6 +495,16 @@ public class FlightService {
         INSTANCE.indexFromTime.clear();
         INSTANCE.indexToTime.clear();
         INSTANCE.indexFromToTime.clear();
+        INSTANCE.adjacency.clear();
+        PlanService.clearCache();
+        SearchCache.clear();
+    }
+
+    /**
+     * 触发航班变更事件
+     */
+    private static void postChanged(EntryFlight flight) {
+        KflightApplication.EVENT_BUS.post(new FlightChangedEvent(flight));
     }
 
     public static FlightService getInstance() {
@@ -0,0 +1,420 @@
+package net.kaaass.kflight.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.kaaass.kflight.data.Snapshot;
+import net.kaaass.kflight.data.WriteAheadLog;
+import net.kaaass.kflight.data.entry.EntryFlight;
+import net.kaaass.kflight.data.entry.EntryTicketOrder;
+import net.kaaass.kflight.exception.NotFoundException;
+import net.kaaass.kflight.exception.ServiceUnavailableException;
+import net.kaaass.kflight.util.LocalDateTimeDeserializer;
+import net.kaaass.kflight.util.LocalDateTimeSerializer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 持久化管理
+ * <p>
+ * 航班与机票的变更在内存中生效时追加到预写日志，启动时先载入快照，再按序重放日志以恢复全部数据与索引。
+ * 航班以添加顺序分配的序列号引用，不受删除导致的 ID 重排影响；机票记录执行结果
+ * （出票、排队、补票、退票），重放时直接还原，不依赖并发时的执行次序。
+ * 变更仅追加记录，由请求入口调用 sync 等待落盘
+ * <p>
+ * 检查点写入快照并开始新一代日志，日志首条记录为其代数，与快照代数不符的日志已包含于快照，不再重放。
+ * 变更期间持有检查点读锁，检查点持有写锁，快照不会含有执行一半的变更
+ */
+@Slf4j
+public class PersistService {
+
+    /**
+     * 记录类型
+     */
+    public enum Type {
+        GENERATION,
+        FLIGHT_ADD,
+        FLIGHT_UPDATE,
+        FLIGHT_REMOVE,
+        FLIGHT_STATE,
+        TICKET_ISSUE,
+        TICKET_QUEUE,
+        TICKET_PROMOTE,
+        TICKET_WITHDRAW
+    }
+
+    /**
+     * 日志记录
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Record {
+
+        Type type;
+
+        /**
+         * 航班序列号，代数记录中为代数
+         */
+        long serial;
+
+        /**
+         * 航班内容，用于添加、更新
+         */
+        EntryFlight flight;
+
+        EntryFlight.State state;
+
+        @JsonSerialize(using = LocalDateTimeSerializer.class)
+        @JsonDeserialize(using = LocalDateTimeDeserializer.class)
+        LocalDateTime delayTo;
+
+        String phone;
+
+        /**
+         * 票号
+         */
+        Integer ticket;
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static volatile WriteAheadLog wal = null;
+
+    private static Path walFile = null;
+
+    private static volatile Path snapshotFile = null;
+
+    /**
+     * 当前日志代数
+     */
+    private static long generation = 0;
+
+    private static volatile boolean replaying = false;
+
+    private static final ReentrantReadWriteLock CHECKPOINT_LOCK = new ReentrantReadWriteLock();
+
+    private static final Map<EntryFlight, Long> SERIALS = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private static final Map<Long, EntryFlight> FLIGHTS = new ConcurrentHashMap<>();
+
+    private static final AtomicLong NEXT_SERIAL = new AtomicLong();
+
+    /**
+     * 本线程最后追加的记录
+     */
+    private static final ThreadLocal<Appended> LAST_APPENDED = ThreadLocal.withInitial(Appended::new);
+
+    private static class Appended {
+        WriteAheadLog log = null;
+        long seq = 0;
+    }
+
+    /**
+     * 由快照与日志恢复数据，并开始记录之后的变更
+     *
+     * @param snapshot 快照文件，可为 null
+     * @param file     日志文件，为 null 时不记录变更
+     */
+    public static synchronized void open(Path snapshot, Path file) throws IOException {
+        if (wal != null || snapshotFile != null)
+            throw new IllegalStateException("persistence already opened");
+        SERIALS.clear();
+        FLIGHTS.clear();
+        NEXT_SERIAL.set(0);
+        generation = 0;
+        snapshotFile = snapshot;
+        walFile = file;
+        WriteAheadLog cur = null;
+        boolean fresh = true;
+        replaying = true;
+        try {
+            if (snapshot != null && Files.exists(snapshot))
+                restore(Snapshot.read(snapshot));
+            if (file != null) {
+                // 日志代数，尚未读到记录时为 -1；已重放的记录数
+                var state = new long[]{-1, 0};
+                cur = new WriteAheadLog(file, payload -> {
+                    var record = parse(payload);
+                    if (state[0] < 0)
+                        state[0] = record.getType() == Type.GENERATION ? record.getSerial() : 0;
+                    if (state[0] == generation) {
+                        apply(record);
+                        state[1]++;
+                    }
+                });
+                if (state[0] > generation) {
+                    // 日志晚于快照，快照缺失或被回退，丢弃日志将丢失数据
+                    cur.close();
+                    throw new IOException("预写日志 " + file + " 的代数 " + state[0] + " 晚于快照代数 "
+                            + generation + "，快照可能缺失，拒绝启动");
+                }
+                if (state[0] >= 0 && state[0] < generation) {
+                    // 早于快照的日志已包含于快照
+                    log.info("预写日志 {} 已包含于快照，重新开始", file);
+                    cur.close();
+                    Files.delete(file);
+                    cur = new WriteAheadLog(file, payload -> {
+                    });
+                } else if (state[0] >= 0) {
+                    fresh = false;
+                    log.info("由预写日志 {} 恢复 {} 条记录", file, state[1]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            snapshotFile = null;
+            walFile = null;
+            throw e;
+        } finally {
+            replaying = false;
+        }
+        wal = cur;
+        if (wal != null && fresh)
+            append(new Record(Type.GENERATION, generation, null, null, null, null, null));
+    }
+
+    /**
+     * 写入剩余记录并停止记录
+     */
+    public static synchronized void close() throws IOException {
+        snapshotFile = null;
+        walFile = null;
+        if (wal == null)
+            return;
+        var cur = wal;
+        wal = null;
+        cur.close();
+    }
+
+    public static boolean isEnabled() {
+        return wal != null;
+    }
+
+    /**
+     * 是否正在由快照与日志恢复数据，此时不应产生对外通知
+     */
+    static boolean isReplaying() {
+        return replaying;
+    }
+
+    /**
+     * 检查点：写入快照，并开始新一代日志
+     */
+    public static synchronized void checkpoint() throws IOException {
+        if (snapshotFile == null)
+            throw new IllegalStateException("snapshot file not configured");
+        CHECKPOINT_LOCK.writeLock().lock();
+        try {
+            var flights = new ArrayList<>(FlightService.getAll());
+            long next = generation + 1;
+            Snapshot.write(snapshotFile, next, flights,
+                    flight -> TicketService.getTicketsInQueue(flight, 0, Integer.MAX_VALUE));
+            generation = next;
+            // 序列号按快照中的顺序重新分配
+            SERIALS.clear();
+            FLIGHTS.clear();
+            for (int i = 0; i < flights.size(); i++) {
+                SERIALS.put(flights.get(i), (long) i);
+                FLIGHTS.put((long) i, flights.get(i));
+            }
+            NEXT_SERIAL.set(flights.size());
+            if (wal != null) {
+                wal.close();
+                Files.delete(walFile);
+                wal = new WriteAheadLog(walFile, payload -> {
+                });
+                append(new Record(Type.GENERATION, generation, null, null, null, null, null));
+            }
+            log.info("已写入快照 {}，共 {} 个航班", snapshotFile, flights.size());
+        } finally {
+            CHECKPOINT_LOCK.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 等待本线程已追加的记录落盘
+     */
+    public static void sync() {
+        var last = LAST_APPENDED.get();
+        if (last.log == null)
+            return;
+        try {
+            last.log.await(last.seq);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 开始变更，阻止检查点直至 endMutation
+     * <p>
+     * 最外层的变更开始前检查预写日志，若刷盘已失败则拒绝变更，以免变更生效而无法记录
+     *
+     * @throws IllegalStateException 若预写日志刷盘已失败，此时未加锁
+     */
+    static void beginMutation() {
+        CHECKPOINT_LOCK.readLock().lock();
+        var cur = wal;
+        if (cur != null && !replaying && cur.hasFailed() && CHECKPOINT_LOCK.getReadHoldCount() == 1) {
+            CHECKPOINT_LOCK.readLock().unlock();
+            throw new IllegalStateException("预写日志写入失败，拒绝变更",
+                    new ServiceUnavailableException("数据无法保存，暂不接受修改！"));
+        }
+    }
+
+    static void endMutation() {
+        CHECKPOINT_LOCK.readLock().unlock();
+    }
+
+    /*
+    变更记录，由各服务在变更生效时调用
+     */
+
+    static void flightAdded(EntryFlight flight) {
+        if (wal == null && !replaying)
+            return;
+        long serial = NEXT_SERIAL.getAndIncrement();
+        SERIALS.put(flight, serial);
+        FLIGHTS.put(serial, flight);
+        append(new Record(Type.FLIGHT_ADD, serial, flight, null, null, null, null));
+    }
+
+    static void flightUpdated(EntryFlight old, EntryFlight flight) {
+        var serial = SERIALS.remove(old);
+        if (serial == null)
+            return;
+        SERIALS.put(flight, serial);
+        FLIGHTS.put(serial, flight);
+        append(new Record(Type.FLIGHT_UPDATE, serial, flight, null, null, null, null));
+    }
+
+    static void flightRemoved(EntryFlight flight) {
+        var serial = SERIALS.remove(flight);
+        if (serial == null)
+            return;
+        FLIGHTS.remove(serial);
+        append(new Record(Type.FLIGHT_REMOVE, serial, null, null, null, null, null));
+    }
+
+    static void stateChanged(EntryFlight flight, EntryFlight.State state, LocalDateTime delayTo) {
+        var serial = SERIALS.get(flight);
+        if (serial != null)
+            append(new Record(Type.FLIGHT_STATE, serial, null, state, delayTo, null, null));
+    }
+
+    static void ticketIssued(EntryTicketOrder order, boolean promoted) {
+        var serial = SERIALS.get(order.getFlight());
+        if (serial != null)
+            append(new Record(promoted ? Type.TICKET_PROMOTE : Type.TICKET_ISSUE, serial,
+                    null, null, null, order.getPhone(), order.getID()));
+    }
+
+    static void ticketQueued(EntryTicketOrder order) {
+        var serial = SERIALS.get(order.getFlight());
+        if (serial != null)
+            append(new Record(Type.TICKET_QUEUE, serial, null, null, null, order.getPhone(), null));
+    }
+
+    static void ticketWithdrawn(EntryFlight flight, String phone) {
+        var serial = SERIALS.get(flight);
+        if (serial != null)
+            append(new Record(Type.TICKET_WITHDRAW, serial, null, null, null, phone, null));
+    }
+
+    private static void append(Record record) {
+        var cur = wal;
+        if (cur == null || replaying)
+            return;
+        byte[] payload;
+        try {
+            payload = MAPPER.writeValueAsBytes(record);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        var last = LAST_APPENDED.get();
+        last.seq = cur.append(payload);
+        last.log = cur;
+    }
+
+    /**
+     * 载入快照
+     */
+    private static void restore(Snapshot.Content content) {
+        generation = content.getGeneration();
+        FlightService.addEntries(content.getFlights());
+        for (var order : content.getQueued())
+            TicketService.replayQueue(order.getFlight(), order.getPhone());
+        log.info("由快照 {} 恢复 {} 个航班", snapshotFile, content.getFlights().size());
+    }
+
+    private static Record parse(byte[] payload) {
+        try {
+            return MAPPER.readValue(payload, Record.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 重放单条记录
+     */
+    private static void apply(Record record) {
+        if (record.getType() == Type.GENERATION)
+            return;
+        if (record.getType() == Type.FLIGHT_ADD) {
+            NEXT_SERIAL.set(record.getSerial());
+            FlightService.addEntry(record.getFlight());
+            return;
+        }
+        var flight = FLIGHTS.get(record.getSerial());
+        if (flight == null) {
+            log.warn("预写日志记录引用了不存在的航班：{}", record);
+            return;
+        }
+        try {
+            switch (record.getType()) {
+                case FLIGHT_UPDATE:
+                    FlightService.updateById(flight.getID(), record.getFlight());
+                    break;
+                case FLIGHT_REMOVE:
+                    FlightService.removeEntry(flight);
+                    break;
+                case FLIGHT_STATE:
+                    FlightService.changeState(flight.getID(), record.getState(), record.getDelayTo());
+                    break;
+                case TICKET_ISSUE:
+                    TicketService.replayIssue(flight, record.getPhone(), record.getTicket(), false);
+                    break;
+                case TICKET_PROMOTE:
+                    TicketService.replayIssue(flight, record.getPhone(), record.getTicket(), true);
+                    break;
+                case TICKET_QUEUE:
+                    TicketService.replayQueue(flight, record.getPhone());
+                    break;
+                case TICKET_WITHDRAW:
+                    TicketService.replayWithdraw(flight, record.getPhone());
+                    break;
+                default:
+                    break;
+            }
+        } catch (NotFoundException e) {
+            log.warn("预写日志记录重放失败：{}", record, e);
+        }
+    }
+}
@@ -2,27 +2,89 @@ package net.kaaass.kflight.service;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
-import net.kaaass.kflight.algorithm.SetIntersect;
+import net.kaaass.kflight.KflightApplication;
+import net.kaaass.kflight.algorithm.ConnectionScan;
 import net.kaaass.kflight.algorithm.Sorter;
+import net.kaaass.kflight.data.FlightAdjacency;
 import net.kaaass.kflight.data.entry.EntryCity;
 import net.kaaass.kflight.data.entry.EntryFlight;
-import net.kaaass.kflight.data.structure.HashSet;
+import net.kaaass.kflight.data.structure.BoundedHeap;
+import net.kaaass.kflight.data.structure.LRUCache;
+import net.kaaass.kflight.event.FlightChangedEvent;
+import net.kaaass.kflight.eventhandle.SubscribeEvent;
 
 import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Random;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.function.IntFunction;
 
 /**
  * 航线规划类
  */
 public class PlanService {
 
-    public final static int DEFAULT_SEARCH_LIMIT = 50;
+    /**
+     * 最多转机次数
+     */
+    public final static int MAX_TRANSFER = 3;
+
+    /**
+     * 方案排序中耗时的参考值，以秒计
+     */
+    private final static float TIME_SCALE = 2 * 3600;
+
+    /**
+     * 方案缓存容量，可通过系统属性 kflight.plan.cache.size 调整
+     */
+    private final static int CACHE_SIZE = Integer.getInteger("kflight.plan.cache.size", 1024);
+
+    /**
+     * 方案缓存，航班变更时按起飞日期失效
+     */
+    private final static LRUCache<PlanKey, CachedPlans> CACHE = new LRUCache<>(CACHE_SIZE);
+
+    static {
+        KflightApplication.EVENT_BUS.register(new PlanService());
+    }
+
+    /**
+     * 方案缓存键
+     */
+    @Data
+    private final static class PlanKey {
+        final int from;
+        final int to;
+        final LocalDate date;
+    }
+
+    /**
+     * 缓存的方案，complete 表示包含全部方案，否则仅为最优的若干个
+     */
+    @Data
+    private final static class CachedPlans {
+        final List<FlightPlan> plans;
+        final boolean complete;
+
+        boolean canServe(int limit) {
+            return complete || (limit > 0 && plans.size() >= limit);
+        }
+    }
+
+    /**
+     * 方案缓存统计
+     */
+    @Data
+    public final static class CacheStats {
+        final int size;
+        final int capacity;
+        final long hits;
+        final long misses;
+        final double hitRate;
+        final long evictions;
+        final long invalidations;
+    }
 
     /**
      * 飞行计划
@@ -39,211 +101,103 @@ public class PlanService {
      * 制定机票中转方案
      */
     public static List<FlightPlan> plan(EntryCity from, EntryCity to, LocalDate date) {
-        int limit = DEFAULT_SEARCH_LIMIT;
-        var result = new ArrayList<FlightPlan>();
-        // 直达查找
-        FlightService.findAllByFromToAndDate(from, to, date)
-                .parallelStream()
-                .map(PlanService::planFor)
-                .forEach(result::add);
-        // 转机查找
-        limit = searchGapOne(result, from, to, date, limit);
-        searchGapMulti(result, from, to, date, limit);
-        planSort(result);
-        return result;
+        return plan(from, to, date, 0);
     }
 
     /**
-     * 寻找两个转机 1 次的方案
-     */
-    static int searchGapOne(List<FlightPlan> result, EntryCity from, EntryCity to, LocalDate date, int searchLimit) {
-        var froms = FlightService.findByFromAndDate(from, date);
-        var tos = FlightService.findByToAndDate(to, date);
-        // 提取中转城市集合
-        var fromsCity = froms.parallelStream()
-                .map(flight -> flight.getTo().getName()) // 出发航班的目的
-                .collect(HashSet<String>::new, HashSet::insert, HashSet::addAll);
-        var tosCity = tos.parallelStream()
-                .map(flight -> flight.getFrom().getName()) // 到达航班的出发
-                .collect(HashSet<String>::new, HashSet::insert, HashSet::addAll);
-        // 求中转城市
-        var midCity = SetIntersect.intersect(fromsCity, tosCity);
-        // 找出所有中转航班
-        var fromFlightsStream = froms.parallelStream()
-                .filter(flight -> midCity.inSet(flight.getTo().getName()))
-                .filter(PlanService::couldSellTicket);  // 保证可购买
-        var toFlights = tos.parallelStream()
-                .filter(flight -> midCity.inSet(flight.getFrom().getName()))
-                .filter(PlanService::couldSellTicket)
-                .collect(Collectors.toList());  // 保证可购买
-        // 对中转航班进行筛选，并拼接结果
-        var limit = new AtomicInteger(searchLimit);
-        fromFlightsStream
-                .flatMap(prevFlight -> limit.get() <= 0 ? Stream.empty() : // 确保搜索未超界限
-                        toFlights
-                                .parallelStream()
-                                .filter(nxtFlight -> {                     // 使用 flatMap 嵌套模拟笛卡尔积
-                                    // 参数：prevFlight、toFlight
-                                    // 目的：筛选出符合转机要求的航班
-                                    if (limit.get() <= 0)
-                                        return false;
-                                    limit.decrementAndGet();
-                                    // 航班中转地检查
-                                    if (!prevFlight.getTo().equals(nxtFlight.getFrom()))
-                                        return false;
-                                    // 航班间隔必须大于等于 40 分钟
-                                    var dur = Duration.between(prevFlight.getLandingTime(),
-                                            nxtFlight.getDepartureTime());
-                                    if (dur.toMinutes() < 40)
-                                        return false;
-                                    // 其余情况则符合要求
-                                    return true;
-                                })
-                                .map(nxtFlight -> {                        // 包装为航班计划
-                                    float totalCost = prevFlight.getTicketPrice()
-                                            + nxtFlight.getTicketPrice();
-                                    long totalTime =
-                                            Duration.between(prevFlight.getDepartureTime(),
-                                                    nxtFlight.getLandingTime()).toSeconds();
-                                    var flights = new ArrayList<EntryFlight>();
-                                    flights.add(prevFlight);
-                                    flights.add(nxtFlight);
-                                    return new FlightPlan(totalCost, totalTime, flights);
-                                }))
-                .forEach(result::add);                                     // 将剩余结果添加至列表
-        return limit.get();
+     * 制定机票中转方案
+     * <p>
+     * 对当日可售航班做连接扫描，得到票价、耗时、转机次数意义下的 Pareto 最优方案
+     *
+     * @param limit 仅保留最优的若干方案，以有界堆筛选；不大于 0 时保留全部
+     */
+    public static List<FlightPlan> plan(EntryCity from, EntryCity to, LocalDate date, int limit) {
+        var key = new PlanKey(from.getId(), to.getId(), date);
+        var cached = CACHE.get(key, entry -> entry.canServe(limit));
+        if (cached != null) {
+            var plans = cached.plans;
+            return new ArrayList<>(limit > 0 && limit < plans.size() ? plans.subList(0, limit) : plans);
+        }
+        // 失效版本在计算前取得，计算期间若有航班变更则不写入缓存
+        long version = CACHE.version();
+        var result = search(from, to, date, limit);
+        CACHE.putIfValid(key, new CachedPlans(result, limit <= 0 || result.size() < limit), version);
+        return new ArrayList<>(result);
     }
 
     /**
-     * 寻找两个转机多次的方案
-     */
-    static int searchGapMulti(List<FlightPlan> result, EntryCity from, EntryCity to, LocalDate date, int searchLimit) {
-        var tos = FlightService.findByToAndDate(to, date);
-        // 提取中转城市集合
-        var tosCitySet = tos.parallelStream()
-                .map(EntryFlight::getFrom) // 到达航班的出发
-                .collect(HashSet<EntryCity>::new, HashSet::insert, HashSet::addAll);
-        var tosCity = tosCitySet.toList();
-        // 对中转城市集合进行排序，计算和
-        Sorter.sort(tosCity, (o1, o2) -> Float.compare(o1.getAvgPrice(), o2.getAvgPrice()));
-        var sum = tosCity.stream()
-                .reduce(0F, (acc, city) -> acc + 1e6f / city.getAvgPrice(), Float::sum);
-        // Random walk 选择
-        var rand = new Random();
-        var ret = new ArrayList<FlightPlan>();
-        while (searchLimit > 0 && !tosCity.isEmpty()) {  // 防止精度问题
-            searchLimit--;
-            var t = rand.nextFloat() * sum;
-            EntryCity mid = null;
-            for (var city : tosCity) {
-                t -= 1e6f / city.getAvgPrice();
-                if (t < 1) {  // 进行选择
-                    mid = city;
-                    sum -= city.getAvgPrice();
-                    break;
-                }
-            }
-            if (mid == null)
-                mid = tosCity.get(0);
-            // 删除城市防止重复
-            tosCity.remove(mid);
-            sum -= 1e6f / mid.getAvgPrice();
-            // 对该城市计算 One gap
-            ret.clear();
-            searchLimit = searchGapOne(ret, from, mid, date, searchLimit);
-            // 取所有 mid -> to 的航班
-            var finalMid = mid;
-            var midTos = tos.stream()
-                    .filter(flight -> flight.getFrom().equals(finalMid))
-                    .filter(PlanService::couldSellTicket)
-                    .collect(Collectors.toList());
-            // 筛选，并加入最终结果
-            var limit = new AtomicInteger(searchLimit);
-            planConcatFlight(ret, midTos, limit).forEach(result::add);
-            searchLimit = limit.get();
+     * 不经缓存，搜索中转方案
+     * <p>
+     * 由各城市当日的出港航班表逐轮扩展，仅访问可达城市的航班
+     */
+    private static List<FlightPlan> search(EntryCity from, EntryCity to, LocalDate date, int limit) {
+        IntFunction<FlightAdjacency.Slot> outbound = city -> FlightService.findOutbound(city, date);
+        var comparator = planComparator(from, to);
+        if (limit <= 0) {
+            var result = new ArrayList<FlightPlan>();
+            ConnectionScan.route(outbound, PlanService::couldSellTicket, from.getId(), to.getId(),
+                    CityService.idBound(), MAX_TRANSFER, journey -> result.add(planOf(journey)));
+            Sorter.sort(result, comparator);
+            return result;
         }
-        // 多层级递归搜索
-        var limit = new AtomicInteger(searchLimit);
-        tosCitySet.forEach(mid -> {
-            if (limit.get() > 0) {
-                ret.clear();
-                limit.set(searchGapMulti(ret, from, mid, date, limit.get()));
-                if (!ret.isEmpty()) {
-                    // 取所有 mid -> to 的航班
-                    var midTos = tos.stream()
-                            .filter(flight -> flight.getFrom().equals(mid))
-                            .filter(PlanService::couldSellTicket)
-                            .collect(Collectors.toList());
-                    // 筛选，并加入最终结果
-                    planConcatFlight(ret, midTos, limit).forEach(result::add);
-                }
-            }
-        });
-        return limit.get();
+        var heap = new BoundedHeap<FlightPlan>(limit, comparator);
+        ConnectionScan.route(outbound, PlanService::couldSellTicket, from.getId(), to.getId(),
+                CityService.idBound(), MAX_TRANSFER, journey -> heap.offer(planOf(journey)));
+        return heap.toSortedList();
+    }
+
+    /**
+     * 航班变更时，使同一起飞日期的方案缓存失效
+     * <p>
+     * 多次转机的方案可能经过任意中间城市，因此当日的所有起降城市对均受影响
+     */
+    @SubscribeEvent
+    public void onFlightChanged(FlightChangedEvent event) {
+        var date = event.getDate();
+        CACHE.invalidateIf(key -> key.date.equals(date));
     }
 
     /**
-     * 将若干转机计划与航班拼接
-     */
-    private static Stream<FlightPlan> planConcatFlight(List<FlightPlan> plans, List<EntryFlight> midTos, AtomicInteger limit) {
-        return plans.parallelStream().flatMap(plan -> limit.get() <= 0 ? Stream.empty() : // 确保搜索未超界限
-                midTos.parallelStream()
-                        .filter(nxtFlight -> {  // 使用 flatMap 嵌套模拟笛卡尔积
-                            // 参数：plan、toFlight
-                            // 目的：筛选出符合转机要求的航班
-                            if (limit.get() <= 0)
-                                return false;
-                            limit.decrementAndGet();
-                            // 航班间隔必须大于等于 40 分钟
-                            var dur = Duration.between(
-                                    plan.flights.get(plan.flights.size() - 1).getLandingTime(),
-                                    nxtFlight.getDepartureTime());
-                            if (dur.toMinutes() < 40)
-                                return false;
-                            // 其余情况则符合要求
-                            return true;
-                        })
-                        .map(nxtFlight -> {  // 包装为航班计划
-                            float totalCost = plan.totalCost
-                                    + nxtFlight.getTicketPrice();
-                            long totalTime =
-                                    Duration.between(plan.flights.get(0).getDepartureTime(),
-                                            nxtFlight.getLandingTime()).toSeconds();
-                            var flights = new ArrayList<>(plan.flights);
-                            flights.add(nxtFlight);
-                            return new FlightPlan(totalCost, totalTime, flights);
-                        })
-        );
+     * 清空方案缓存
+     */
+    public static void clearCache() {
+        CACHE.clear();
     }
 
     /**
-     * 对转机计划进行排序
-     */
-    static void planSort(List<FlightPlan> plan) {
-        var cost = plan.parallelStream()
-                .reduce(0F, (acc, p) -> acc + p.totalCost, Float::sum);
-        var time = plan.parallelStream()
-                .reduce(0F, (acc, p) -> acc + p.totalTime, Float::sum);
-        Sorter.sort(plan, (o1, o2) -> {
-            int cmp = Integer.compare(o1.flights.size(), o2.flights.size());
-            // 优先取转机次数少的
-            if (cmp == 0) {
-                var val1 = o1.totalCost / cost + o1.totalTime / time;
-                var val2 = o1.totalCost / cost + o1.totalTime / time;
-                cmp = Float.compare(val1, val2);
-            }
-            return cmp;
-        });
+     * 获得方案缓存统计
+     */
+    public static CacheStats getCacheStats() {
+        long hits = CACHE.hits();
+        long misses = CACHE.misses();
+        double hitRate = hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        return new CacheStats(CACHE.size(), CACHE.capacity(), hits, misses, hitRate,
+                CACHE.evictions(), CACHE.invalidations());
+    }
+
+    /**
+     * 转机计划比较器：优先取转机次数少的，其次取票价、耗时归一化之和小的
+     * <p>
+     * 票价以两城市平均票价为参考值，耗时以 TIME_SCALE 为参考值。参考值不依赖候选集合，
+     * 因此可对候选方案流式筛选
+     */
+    static Comparator<FlightPlan> planComparator(EntryCity from, EntryCity to) {
+        float avgPrice = (from.getAvgPrice() + to.getAvgPrice()) / 2;
+        float costScale = avgPrice > 0 ? avgPrice : 1;
+        return Comparator.<FlightPlan>comparingInt(p -> p.flights.size())
+                .thenComparingDouble(p -> p.totalCost / costScale + (float) p.totalTime / TIME_SCALE);
     }
 
     /**
-     * 为单航班创建转机计划
+     * 为航班序列创建转机计划
      */
-    private static FlightPlan planFor(EntryFlight flight) {
-        return new FlightPlan(flight.getTicketPrice(), flight.getFlightTime(),
-                new ArrayList<>() {{
-                    add(flight);
-                }});
+    private static FlightPlan planOf(List<EntryFlight> flights) {
+        float totalCost = 0;
+        for (var flight : flights)
+            totalCost += flight.getTicketPrice();
+        long totalTime = Duration.between(flights.get(0).getDepartureTime(),
+                flights.get(flights.size() - 1).getLandingTime()).toSeconds();
+        return new FlightPlan(totalCost, totalTime, flights);
     }
 
     /**
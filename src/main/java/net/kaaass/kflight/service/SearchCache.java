@@ -0,0 +1,282 @@
+package net.kaaass.kflight.service;
+
+import lombok.AllArgsConstructor;
+import net.kaaass.kflight.KflightApplication;
+import net.kaaass.kflight.data.entry.EntryCity;
+import net.kaaass.kflight.data.entry.EntryFlight;
+import net.kaaass.kflight.data.structure.LRUCache;
+import net.kaaass.kflight.event.FlightChangedEvent;
+import net.kaaass.kflight.eventhandle.SubscribeEvent;
+import net.kaaass.kflight.exception.BadRequestException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 航班查询结果缓存
+ * <p>
+ * 以查询条件与排序方式为键，仅保存排序后的航班 ID。每个城市每日、每日各维护一个代数，
+ * 航班变更时递增；缓存条目记录计算时相关代数之和，读取时不一致即视为失效。
+ * 余票另有一套代数，购票退票只递增余票代数，仅使按余票排序的缓存失效。
+ * 已过去日期的代数每天清理一次
+ */
+public class SearchCache {
+
+    /**
+     * 缓存容量，可通过系统属性 kflight.search.cache.size 调整
+     */
+    private final static int CACHE_SIZE = Integer.getInteger("kflight.search.cache.size", 4096);
+
+    /**
+     * 时间范围查询最多覆盖的天数，超过则不缓存
+     */
+    private final static int MAX_CACHED_DAYS = 31;
+
+    /**
+     * 不缓存的标记
+     */
+    public final static long NO_CACHE = -1;
+
+    private final static LRUCache<String, Entry> CACHE = new LRUCache<>(CACHE_SIZE);
+
+    /**
+     * 代数表最多保存的条目数，可通过系统属性 kflight.search.cache.generations 调整
+     */
+    private final static int MAX_GENERATIONS = Integer.getInteger("kflight.search.cache.generations", 1 << 16);
+
+    /**
+     * 代数表，键为 (城市编号, 日期)；城市编号为 -1 时表示当日所有城市
+     */
+    private final static ConcurrentHashMap<Long, AtomicLong> GENERATIONS = new ConcurrentHashMap<>();
+
+    /**
+     * 余票代数表，键同代数表，仅按余票排序的查询依赖
+     */
+    private final static ConcurrentHashMap<Long, AtomicLong> SEAT_GENERATIONS = new ConcurrentHashMap<>();
+
+    /**
+     * 上次清理代数表的日期
+     */
+    private final static AtomicLong PRUNED_DAY = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * 全局代数，航班删除导致 ID 重排时递增
+     */
+    private final static AtomicLong EPOCH = new AtomicLong();
+
+    static {
+        KflightApplication.EVENT_BUS.register(new SearchCache());
+    }
+
+    @AllArgsConstructor
+    private final static class Entry {
+        final int[] ids;
+        final long stamp;
+    }
+
+    /**
+     * 查询结果的计算过程
+     */
+    @FunctionalInterface
+    public interface Loader {
+        List<EntryFlight> load() throws BadRequestException;
+    }
+
+    /**
+     * 查找缓存，失效或不存在时重新计算
+     *
+     * @param stamp 查询相关的代数之和，为 NO_CACHE 时不使用缓存
+     */
+    public static List<EntryFlight> find(String key, long stamp, Loader loader) throws BadRequestException {
+        if (stamp == NO_CACHE)
+            return loader.load();
+        return findPage(key, stamp, loader, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 查找缓存并分页。缓存保存完整的结果，各页共用，只还原所需的一页
+     *
+     * @param stamp  查询相关的代数之和，为 NO_CACHE 时不使用缓存
+     * @param offset 跳过的项数
+     * @param limit  最多返回的项数
+     */
+    public static List<EntryFlight> findPage(String key, long stamp, Loader loader, int offset, int limit)
+            throws BadRequestException {
+        if (stamp == NO_CACHE)
+            return slice(loader.load(), offset, limit);
+        var entry = CACHE.get(key, cached -> cached.stamp == stamp);
+        if (entry != null) {
+            int first = Math.min(offset, entry.ids.length);
+            var ret = resolve(entry.ids, first, first + Math.min(limit, entry.ids.length - first));
+            if (ret != null)
+                return ret;
+        }
+        var result = loader.load();
+        var ids = new int[result.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = result.get(i).getID();
+        CACHE.put(key, new Entry(ids, stamp));
+        return slice(result, offset, limit);
+    }
+
+    /**
+     * 截取结果的一页
+     */
+    private static List<EntryFlight> slice(List<EntryFlight> result, int offset, int limit) {
+        if (offset == 0 && limit >= result.size())
+            return result;
+        int first = Math.min(offset, result.size());
+        return new ArrayList<>(result.subList(first, first + Math.min(limit, result.size() - first)));
+    }
+
+    /**
+     * 单城市单日查询的代数
+     *
+     * @param sort 排序方式，按余票排序时同时依赖余票代数
+     */
+    public static long stampOf(EntryCity city, LocalDate date, String sort) {
+        long day = date.toEpochDay();
+        long ret = generationOf(GENERATIONS, city.getId(), day);
+        if (dependsOnSeats(sort))
+            ret += generationOf(SEAT_GENERATIONS, city.getId(), day);
+        return ret + EPOCH.get();
+    }
+
+    /**
+     * 起降城市单日查询的代数
+     *
+     * @param sort 排序方式，按余票排序时同时依赖余票代数
+     */
+    public static long stampOf(EntryCity from, EntryCity to, LocalDate date, String sort) {
+        long day = date.toEpochDay();
+        long ret = generationOf(GENERATIONS, from.getId(), day) + generationOf(GENERATIONS, to.getId(), day);
+        if (dependsOnSeats(sort))
+            ret += generationOf(SEAT_GENERATIONS, from.getId(), day) + generationOf(SEAT_GENERATIONS, to.getId(), day);
+        return ret + EPOCH.get();
+    }
+
+    /**
+     * 日期范围查询的代数
+     *
+     * @param sort 排序方式，按余票排序时同时依赖余票代数
+     * @return 若范围过大则返回 NO_CACHE
+     */
+    public static long stampOf(LocalDate start, LocalDate end, String sort) {
+        long first = start.toEpochDay();
+        long last = end.toEpochDay();
+        if (last < first)
+            return EPOCH.get();
+        if (last - first >= MAX_CACHED_DAYS)
+            return NO_CACHE;
+        boolean seats = dependsOnSeats(sort);
+        long ret = 0;
+        for (long day = first; day <= last; day++) {
+            ret += generationOf(GENERATIONS, -1, day);
+            if (seats)
+                ret += generationOf(SEAT_GENERATIONS, -1, day);
+        }
+        return ret + EPOCH.get();
+    }
+
+    /**
+     * 航班余票变化，仅递增余票代数，不按余票排序的缓存不受影响
+     */
+    public static void touchSeats(EntryFlight flight) {
+        touch(SEAT_GENERATIONS, flight.getFrom(), flight.getTo(), flight.getDepartureTime().toLocalDate());
+    }
+
+    /**
+     * 航班 ID 重排，使全部缓存失效
+     */
+    public static void invalidateAll() {
+        EPOCH.incrementAndGet();
+    }
+
+    /**
+     * 清空缓存
+     */
+    public static void clear() {
+        EPOCH.incrementAndGet();
+        CACHE.clear();
+    }
+
+    @SubscribeEvent
+    public void onFlightChanged(FlightChangedEvent event) {
+        touch(GENERATIONS, event.getFrom(), event.getTo(), event.getDate());
+    }
+
+    /**
+     * 排序方式是否含余票字段
+     */
+    private static boolean dependsOnSeats(String sort) {
+        return sort.indexOf('r') >= 0 || sort.indexOf('R') >= 0;
+    }
+
+    private static void touch(ConcurrentHashMap<Long, AtomicLong> generations,
+                              EntryCity from, EntryCity to, LocalDate date) {
+        prune();
+        long day = date.toEpochDay();
+        bump(generations, from.getId(), day);
+        bump(generations, to.getId(), day);
+        bump(generations, -1, day);
+    }
+
+    private static void bump(ConcurrentHashMap<Long, AtomicLong> generations, int city, long day) {
+        generations.computeIfAbsent(keyOf(city, day), key -> new AtomicLong()).incrementAndGet();
+    }
+
+    private static long generationOf(ConcurrentHashMap<Long, AtomicLong> generations, int city, long day) {
+        var ret = generations.get(keyOf(city, day));
+        return ret == null ? 0 : ret.get();
+    }
+
+    private static long keyOf(int city, long day) {
+        return ((long) city << 32) | (day & 0xffffffffL);
+    }
+
+    /**
+     * 清理代数表。每天首次变更时移除已过去日期的代数；条目数超过上限时全部移除
+     */
+    private static void prune() {
+        long today = LocalDate.now().toEpochDay();
+        long last = PRUNED_DAY.get();
+        boolean full = GENERATIONS.size() + SEAT_GENERATIONS.size() > MAX_GENERATIONS;
+        if (!full && (last >= today || !PRUNED_DAY.compareAndSet(last, today)))
+            return;
+        prune(GENERATIONS, today, full);
+        prune(SEAT_GENERATIONS, today, full);
+    }
+
+    /**
+     * 移除代数前先将其计入全局代数，使任意查询的代数之和只增不减，不会与旧缓存条目重合。
+     * 查询先读各代数再读全局代数，因此并发清理时读到的和也不会减小
+     */
+    private static void prune(ConcurrentHashMap<Long, AtomicLong> generations, long today, boolean all) {
+        for (var it = generations.entrySet().iterator(); it.hasNext(); ) {
+            var entry = it.next();
+            if (!all && (int) (long) entry.getKey() >= today)
+                continue;
+            EPOCH.addAndGet(entry.getValue().get() + 1);
+            it.remove();
+        }
+    }
+
+    /**
+     * 由 ID 还原 [from, to) 内的航班
+     *
+     * @return 若有 ID 已不存在则返回 null
+     */
+    private static List<EntryFlight> resolve(int[] ids, int from, int to) {
+        var ret = new ArrayList<EntryFlight>(to - from);
+        for (int i = from; i < to; i++) {
+            var flight = FlightService.getById(ids[i]);
+            if (flight.isEmpty())
+                return null;
+            ret.add(flight.get());
+        }
+        return ret;
+    }
+}
@@ -3,22 +3,37 @@ package net.kaaass.kflight.service;
 import net.kaaass.kflight.KflightApplication;
 import net.kaaass.kflight.data.entry.EntryFlight;
 import net.kaaass.kflight.data.entry.EntryTicketOrder;
-import net.kaaass.kflight.data.structure.LinkedQueue;
+import net.kaaass.kflight.event.FlightChangedEvent;
 import net.kaaass.kflight.event.TicketWithdrawEvent;
 import net.kaaass.kflight.eventhandle.SubscribeEvent;
 import net.kaaass.kflight.exception.BadRequestException;
 import net.kaaass.kflight.exception.NotFoundException;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 /**
  * 票务管理
+ * <p>
+ * 余票以原子操作增减，航班机票表按航班分段加锁，不同航班的购票互不阻塞。
+ * 每个航班维护各自的排队队列，购票线程无锁入队；补票时持有航班锁出队。
+ * 退票时在航班锁内将退回的票直接转给排队订单，不经余票，新购票无法插队
  */
 public class TicketService {
 
-    static final LinkedQueue<EntryTicketOrder> QUEUE = new LinkedQueue<>();
+    /**
+     * 航班锁分段数，须为 2 的幂
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    private static final Object[] LOCKS = new Object[LOCK_STRIPES];
+
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++)
+            LOCKS[i] = new Object();
+    }
 
     public static boolean isFlightBooking(EntryFlight flight) {
         return flight.getState() == EntryFlight.State.BOOKING;
@@ -27,85 +42,307 @@ public class TicketService {
     /**
      * 购票
      */
-    public static synchronized EntryTicketOrder orderTicket(EntryTicketOrder order) throws BadRequestException {
-        var flight = order.getFlight();
-        if (!isFlightBooking(flight))
-            throw new BadRequestException("本航班不接受购票！");
-        if (flight.getRestCabin() > 0) {
+    public static EntryTicketOrder orderTicket(EntryTicketOrder order) throws BadRequestException {
+        PersistService.beginMutation();
+        try {
+            var flight = order.getFlight();
+            if (!isFlightBooking(flight))
+                throw new BadRequestException("本航班不接受购票！");
             // 有余票，直接购票
-            flight.setRestCabin(flight.getRestCabin() - 1);
-            var tickets = flight.getTickets();
-            order.setID(tickets.size());
-            order.setState(EntryTicketOrder.State.DONE);
-            tickets.add(order);
-            updateIds(flight);
-        } else {
-            // 没有票，存入队列
+            int rest = flight.takeCabin();
+            if (rest > 0) {
+                issue(order, rest, false);
+                return order;
+            }
+            // 没有票，存入队列。入队后复查余票，以免错过并发退票的补票
             order.setState(EntryTicketOrder.State.QUEUED);
-            QUEUE.push(order);
+            PersistService.ticketQueued(order);
+            flight.getWaitlist().push(order);
+            if (flight.getRestCabin() > 0)
+                checkQueue(new TicketWithdrawEvent(flight, order.getPhone()));
+            return order;
+        } finally {
+            PersistService.endMutation();
+        }
+    }
+
+    /**
+     * 批量购票。同一航班的订单在一次加锁内占用余票，余票不足的部分按列表顺序排队
+     *
+     * @throws BadRequestException 若有航班不接受购票，此时不处理任何订单
+     */
+    public static List<EntryTicketOrder> orderTickets(List<EntryTicketOrder> orders) throws BadRequestException {
+        PersistService.beginMutation();
+        try {
+            var flights = new ArrayList<EntryFlight>();
+            var groups = new IdentityHashMap<EntryFlight, List<EntryTicketOrder>>();
+            for (var order : orders) {
+                var flight = order.getFlight();
+                if (!isFlightBooking(flight))
+                    throw new BadRequestException("航班 " + flight.getFlightNo() + " 不接受购票！");
+                groups.computeIfAbsent(flight, key -> {
+                    flights.add(key);
+                    return new ArrayList<>();
+                }).add(order);
+            }
+            for (var flight : flights) {
+                var group = groups.get(flight);
+                boolean queued;
+                synchronized (lockOf(flight)) {
+                    int rest = flight.takeCabins(group.size());
+                    int taken = Math.min(rest, group.size());
+                    // 有余票的部分直接购票
+                    for (int i = 0; i < taken; i++) {
+                        var order = group.get(i);
+                        order.setState(EntryTicketOrder.State.DONE);
+                        flight.getTicketIndex().add(order);
+                        PersistService.ticketIssued(order, false);
+                    }
+                    if (taken > 0)
+                        checkSoldOut(flight, rest, rest - taken);
+                    // 其余存入队列
+                    queued = taken < group.size();
+                    if (queued) {
+                        var queue = flight.getWaitlist();
+                        for (int i = taken; i < group.size(); i++) {
+                            var order = group.get(i);
+                            order.setState(EntryTicketOrder.State.QUEUED);
+                            PersistService.ticketQueued(order);
+                            queue.push(order);
+                        }
+                    }
+                }
+                if (queued && flight.getRestCabin() > 0)
+                    checkQueue(new TicketWithdrawEvent(flight, group.get(0).getPhone()));
+            }
+            return orders;
+        } finally {
+            PersistService.endMutation();
         }
-        return order;
     }
 
     /**
      * 通过航班与客户手机号退票
      */
-    public static synchronized void withdrawTicket(EntryFlight flight, String phone) throws NotFoundException, BadRequestException {
-        if (!isFlightBooking(flight))
-            throw new BadRequestException("航班已经不可退票！");
-        var tickets = flight.getTickets();
-        var found = tickets.parallelStream()
-                .filter(order -> order.getPhone().equals(phone))
-                .collect(Collectors.toList());
-        if (found.size() <= 0)
-            throw new NotFoundException("未找到此机票！");
-        found.forEach(tickets::remove);
-        flight.setRestCabin(flight.getRestCabin() + found.size());
-        // 触发退票事件
-        checkQueue(new TicketWithdrawEvent(flight, phone));
+    public static void withdrawTicket(EntryFlight flight, String phone) throws NotFoundException, BadRequestException {
+        PersistService.beginMutation();
+        try {
+            if (!isFlightBooking(flight))
+                throw new BadRequestException("航班已经不可退票！");
+            List<EntryTicketOrder> found;
+            int released, rest = 0;
+            synchronized (lockOf(flight)) {
+                found = flight.getTicketIndex().removeByPhone(phone);
+                if (found.size() <= 0)
+                    throw new NotFoundException("未找到此机票！");
+                PersistService.ticketWithdrawn(flight, phone);
+                // 退回的票先补给排队订单，余下的才归还为余票，以免新购票插队
+                released = found.size() - handOff(flight, found.size());
+                if (released > 0)
+                    rest = flight.releaseCabin(released);
+            }
+            if (released > 0) {
+                checkSoldOut(flight, rest, rest + released);
+                // 归还余票时可能有订单并发入队，触发退票事件
+                checkQueue(new TicketWithdrawEvent(flight, phone));
+            }
+        } finally {
+            PersistService.endMutation();
+        }
     }
 
+    /**
+     * 获得全部排队中的订单
+     */
     public static List<EntryTicketOrder> getTicketsInQueue() {
         var ret = new ArrayList<EntryTicketOrder>();
-        QUEUE.forEach(ret::add);
+        Optional<EntryFlight> flight;
+        for (int id = 0; (flight = FlightService.getById(id)).isPresent(); id++) {
+            if (flight.get().getWaitlist().size() > 0)
+                ret.addAll(getTicketsInQueue(flight.get(), 0, Integer.MAX_VALUE));
+        }
         return ret;
     }
 
     /**
-     * 检查队列中的票是否可售
+     * 按排队顺序分页获得航班的排队订单
+     */
+    public static List<EntryTicketOrder> getTicketsInQueue(EntryFlight flight, int offset, int limit) {
+        var ret = new ArrayList<EntryTicketOrder>();
+        synchronized (lockOf(flight)) {
+            var index = new int[]{0};
+            flight.getWaitlist().forEach(order -> {
+                if (index[0] >= offset && ret.size() < limit)
+                    ret.add(order);
+                index[0]++;
+            });
+        }
+        return ret;
+    }
+
+    /**
+     * 获得航班排队人数
+     */
+    public static int getQueueSize(EntryFlight flight) {
+        return flight.getWaitlist().size();
+    }
+
+    /**
+     * 为退票航班按排队顺序补票
      */
     @SubscribeEvent
-    public static synchronized void checkQueue(TicketWithdrawEvent event) {
-        var rest = new LinkedQueue<EntryTicketOrder>();
-        while (!QUEUE.isEmpty()) {
-            var order = QUEUE.popFront();
-            var flight = order.getFlight();
-            if (flight.getRestCabin() > 0) {
-                // 有余票，直接购票
-                flight.setRestCabin(flight.getRestCabin() - 1);
-                var tickets = flight.getTickets();
-                order.setID(tickets.size());
-                order.setState(EntryTicketOrder.State.DONE);
-                tickets.add(order);
-                updateIds(flight);
-            } else {
-                // 没有票，存入队列
-                order.setState(EntryTicketOrder.State.QUEUED);
-                rest.push(order);
+    public static void checkQueue(TicketWithdrawEvent event) {
+        PersistService.beginMutation();
+        try {
+            var flight = event.getFlight();
+            synchronized (lockOf(flight)) {
+                var queue = flight.getWaitlist();
+                if (!isFlightBooking(flight)) {
+                    queue.clear();
+                    return;
+                }
+                while (!queue.isEmpty()) {
+                    int cabin = flight.takeCabin();
+                    if (cabin <= 0)
+                        break;
+                    issue(queue.popFront(), cabin, true);
+                }
             }
+        } finally {
+            PersistService.endMutation();
         }
-        // 未购票的继续排队
-        while (!rest.isEmpty()) {
-            var cur = rest.popFront();
-            if (isFlightBooking(cur.getFlight()))
-                QUEUE.push(cur);
+    }
+
+    /**
+     * 将退回的票按排队顺序直接转给排队订单，余票数不变，须持有航班锁
+     *
+     * @return 转出的票数
+     */
+    private static int handOff(EntryFlight flight, int count) {
+        var queue = flight.getWaitlist();
+        int handed = 0;
+        while (handed < count && !queue.isEmpty()) {
+            var order = queue.popFront();
+            order.setState(EntryTicketOrder.State.DONE);
+            flight.getTicketIndex().add(order);
+            PersistService.ticketIssued(order, true);
+            handed++;
         }
+        return handed;
     }
 
-    private static synchronized void updateIds(EntryFlight flight) {
-        for (int i = 0; i < flight.getTickets().size(); i++) {
-            flight.getTickets().get(i).setID(i);
+    /**
+     * 航班不再售票时，放弃其排队订单
+     */
+    @SubscribeEvent
+    public void onFlightChanged(FlightChangedEvent event) {
+        var flight = event.getFlight();
+        if (!isFlightBooking(flight))
+            removeQueue(flight);
+    }
+
+    /**
+     * 放弃航班的排队订单
+     */
+    public static void removeQueue(EntryFlight flight) {
+        synchronized (lockOf(flight)) {
+            flight.getWaitlist().clear();
+        }
+    }
+
+    /**
+     * 清空全部排队订单
+     */
+    public static void clearQueue() {
+        Optional<EntryFlight> flight;
+        for (int id = 0; (flight = FlightService.getById(id)).isPresent(); id++)
+            removeQueue(flight.get());
+    }
+
+    /**
+     * 出票，余票须已占用
+     *
+     * @param restBefore 占用前的余票数
+     * @param promoted   是否由排队转为出票
+     */
+    private static void issue(EntryTicketOrder order, int restBefore, boolean promoted) {
+        var flight = order.getFlight();
+        synchronized (lockOf(flight)) {
+            order.setState(EntryTicketOrder.State.DONE);
+            flight.getTicketIndex().add(order);
+            PersistService.ticketIssued(order, promoted);
+        }
+        checkSoldOut(flight, restBefore, restBefore - 1);
+    }
+
+    /*
+    日志重放，由 PersistService 在恢复数据时单线程调用
+     */
+
+    static void replayIssue(EntryFlight flight, String phone, int ticket, boolean promoted) {
+        int rest;
+        synchronized (lockOf(flight)) {
+            EntryTicketOrder order = promoted ? removeQueued(flight, phone) : null;
+            if (order == null)
+                order = new EntryTicketOrder(flight, phone);
+            order.setID(ticket);
+            order.setState(EntryTicketOrder.State.DONE);
+            flight.getTicketIndex().restore(order);
+            rest = flight.getRestCabin();
+            flight.setRestCabin(rest - 1);
         }
+        checkSoldOut(flight, rest, rest - 1);
+    }
+
+    static void replayQueue(EntryFlight flight, String phone) {
+        var order = new EntryTicketOrder(flight, phone);
+        order.setState(EntryTicketOrder.State.QUEUED);
+        flight.getWaitlist().push(order);
+    }
+
+    static void replayWithdraw(EntryFlight flight, String phone) {
+        List<EntryTicketOrder> found;
+        synchronized (lockOf(flight)) {
+            found = flight.getTicketIndex().removeByPhone(phone);
+        }
+        var rest = flight.releaseCabin(found.size());
+        checkSoldOut(flight, rest, rest + found.size());
+    }
+
+    /**
+     * 从排队队列中取出手机号对应的第一个订单，须持有航班锁
+     */
+    private static EntryTicketOrder removeQueued(EntryFlight flight, String phone) {
+        var queue = flight.getWaitlist();
+        EntryTicketOrder found = null;
+        var rest = new ArrayList<EntryTicketOrder>();
+        EntryTicketOrder cur;
+        while ((cur = queue.popFront()) != null) {
+            if (found == null && cur.getPhone().equals(phone))
+                found = cur;
+            else
+                rest.add(cur);
+        }
+        rest.forEach(queue::push);
+        return found;
+    }
+
+    /**
+     * 余票变化。查询结果可按余票排序，须使其缓存失效；
+     * 余票在有无之间变化时，航班的可售性改变，触发航班变更事件
+     */
+    private static void checkSoldOut(EntryFlight flight, int restBefore, int restAfter) {
+        SearchCache.touchSeats(flight);
+        if ((restBefore > 0) != (restAfter > 0))
+            KflightApplication.EVENT_BUS.post(new FlightChangedEvent(flight));
+    }
+
+    /**
+     * 获得航班所在分段的锁
+     */
+    static Object lockOf(EntryFlight flight) {
+        int h = System.identityHashCode(flight);
+        return LOCKS[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
     }
 
     static {
@@ -1,31 +1,20 @@
 package net.kaaass.kflight.util;
 
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 public class FileUtils {
 
     public static String readAll(String filename) throws IOException {
-        var fr = new FileReader(filename);
-        int ch;
-        StringBuilder stringBuilder = new StringBuilder();
-        while ((ch = fr.read()) != -1) {
-            stringBuilder.append((char) ch);
-        }
-        fr.close();
-        return stringBuilder.toString();
+        return Files.readString(Path.of(filename), StandardCharsets.UTF_8);
     }
 
     public static String readAll(InputStream stream) throws IOException {
-        var fr = new InputStreamReader(stream);
-        int ch;
-        StringBuilder stringBuilder = new StringBuilder();
-        while ((ch = fr.read()) != -1) {
-            stringBuilder.append((char) ch);
+        try (stream) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
         }
-        fr.close();
-        return stringBuilder.toString();
     }
 }
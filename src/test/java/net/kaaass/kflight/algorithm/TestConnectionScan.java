@@ -0,0 +1,216 @@
+package net.kaaass.kflight.algorithm;
+
+import net.kaaass.kflight.data.FlightAdjacency;
+import net.kaaass.kflight.data.entry.EntryCity;
+import net.kaaass.kflight.data.entry.EntryFlight;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 连接扫描路径规划的单元测试
+ */
+public class TestConnectionScan {
+
+    private EntryCity[] cities;
+
+    private List<EntryFlight> flights;
+
+    @Before
+    public void createCities() {
+        cities = new EntryCity[4];
+        for (int i = 0; i < cities.length; i++) {
+            cities[i] = new EntryCity("city" + i);
+            cities[i].setId(i);
+        }
+        flights = new ArrayList<>();
+    }
+
+    private void addFlight(String flightNo, int from, int to, String departure, String landing, float price) {
+        var dep = LocalDateTime.parse("2020-04-09T" + departure);
+        var land = LocalDateTime.parse("2020-04-09T" + landing);
+        flights.add(new EntryFlight(null, EntryFlight.State.BOOKING, flightNo, "test", dep, land,
+                Duration.between(dep, land).toSeconds(), cities[from], cities[to], null, 0,
+                100, 100, price, new ArrayList<>()));
+    }
+
+    private List<List<EntryFlight>> route(int from, int to, int maxTransfers) {
+        var adjacency = new FlightAdjacency();
+        flights.forEach(adjacency::add);
+        var date = LocalDate.of(2020, 4, 9);
+        return ConnectionScan.route(city -> adjacency.outbound(city, date), flight -> true,
+                from, to, cities.length, maxTransfers);
+    }
+
+    private List<String> route(int from, int to) {
+        return route(from, to, 3)
+                .stream()
+                .map(journey -> journey.stream()
+                        .map(EntryFlight::getFlightNo)
+                        .collect(Collectors.joining(",")))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testDirectAndTransfer() {
+        addFlight("D1", 0, 3, "08:00", "12:00", 1000);  // 直达，贵
+        addFlight("A1", 0, 1, "08:00", "09:00", 200);
+        addFlight("B1", 1, 3, "09:30", "10:30", 200);   // 转机时间不足
+        addFlight("B2", 1, 3, "09:40", "10:40", 300);   // 恰好 40 分钟
+        addFlight("B3", 1, 3, "11:00", "12:00", 300);   // 被 B2 支配
+        assertEquals(List.of("A1,B2", "D1"), route(0, 3));
+    }
+
+    @Test
+    public void testParetoFront() {
+        addFlight("A1", 0, 1, "06:00", "07:00", 100);
+        addFlight("A2", 0, 2, "08:00", "09:00", 300);
+        addFlight("B1", 1, 3, "10:00", "11:00", 100);   // 便宜但耗时长
+        addFlight("C1", 2, 3, "10:00", "11:00", 100);   // 耗时短但贵
+        addFlight("C2", 2, 3, "10:30", "11:30", 500);   // 被 C1 支配
+        addFlight("E1", 1, 0, "08:00", "09:00", 10);    // 回到出发地，忽略
+        var result = route(0, 3);
+        assertEquals(List.of("A1,B1", "A2,C1"), result);
+    }
+
+    @Test
+    public void testMultiHop() {
+        addFlight("A1", 0, 1, "06:00", "07:00", 100);
+        addFlight("B1", 1, 2, "08:00", "09:00", 100);
+        addFlight("C1", 2, 3, "10:00", "11:00", 100);
+        addFlight("C2", 2, 3, "09:10", "10:00", 100);   // 转机时间不足
+        assertEquals(List.of("A1,B1,C1"), route(0, 3));
+        assertTrue(route(0, 3, 1).isEmpty());
+        assertTrue(route(3, 0).isEmpty());
+    }
+
+    /**
+     * 行程目标：票价、总耗时、转机次数
+     */
+    private static List<Long> objectiveOf(List<EntryFlight> journey) {
+        float cost = 0;
+        for (var flight : journey)
+            cost += flight.getTicketPrice();
+        long duration = Duration.between(journey.get(0).getDepartureTime(),
+                journey.get(journey.size() - 1).getLandingTime()).toSeconds();
+        return List.of((long) cost, duration, (long) journey.size() - 1);
+    }
+
+    /**
+     * 穷举全部行程
+     */
+    private void enumerate(List<EntryFlight> prefix, int from, int to, int maxTransfers, List<List<Long>> out) {
+        var last = prefix.get(prefix.size() - 1);
+        int city = last.getTo().getId();
+        if (city == to) {
+            out.add(objectiveOf(prefix));
+            return;
+        }
+        if (prefix.size() > maxTransfers)
+            return;
+        for (var flight : flights) {
+            int v = flight.getTo().getId();
+            if (flight.getFrom().getId() != city || v == from || v == city ||
+                    Duration.between(last.getLandingTime(), flight.getDepartureTime()).toMinutes() < 40)
+                continue;
+            prefix.add(flight);
+            enumerate(prefix, from, to, maxTransfers, out);
+            prefix.remove(prefix.size() - 1);
+        }
+    }
+
+    private static boolean dominates(List<Long> a, List<Long> b) {
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) > b.get(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 测试标签较多、并行扩展时与穷举的 Pareto 前沿一致
+     */
+    @Test
+    public void testParetoAgainstEnumeration() {
+        cities = new EntryCity[6];
+        for (int i = 0; i < cities.length; i++) {
+            cities[i] = new EntryCity("city" + i);
+            cities[i].setId(i);
+        }
+        var rand = new Random(233);
+        for (int i = 0; i < 400; i++) {
+            int from = rand.nextInt(cities.length);
+            int to = (from + 1 + rand.nextInt(cities.length - 1)) % cities.length;
+            int dep = rand.nextInt(20 * 60);
+            int land = dep + 30 + rand.nextInt(180);
+            addFlight("F" + i, from, to, String.format("%02d:%02d", dep / 60, dep % 60),
+                    String.format("%02d:%02d", land / 60, land % 60),
+                    100 + rand.nextInt(900));
+        }
+        int maxTransfers = 2;
+        var all = new ArrayList<List<Long>>();
+        for (var flight : flights) {
+            if (flight.getFrom().getId() == 0 && flight.getTo().getId() != 0) {
+                var prefix = new ArrayList<EntryFlight>();
+                prefix.add(flight);
+                enumerate(prefix, 0, 5, maxTransfers, all);
+            }
+        }
+        var expected = all.stream()
+                .filter(a -> all.stream().noneMatch(b -> dominates(b, a) && !b.equals(a)))
+                .distinct()
+                .sorted(Comparator.comparing(Object::toString))
+                .collect(Collectors.toList());
+        var actual = route(0, 5, maxTransfers).stream()
+                .map(TestConnectionScan::objectiveOf)
+                .sorted(Comparator.comparing(Object::toString))
+                .collect(Collectors.toList());
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * 测试邻接表批量加入与逐个加入结果一致
+     */
+    @Test
+    public void testAdjacencyAddAll() {
+        var rand = new Random(233);
+        for (int i = 0; i < 300; i++) {
+            int dep = rand.nextInt(20) * 60;
+            addFlight("F" + i, rand.nextInt(cities.length), rand.nextInt(cities.length),
+                    String.format("%02d:%02d", dep / 60, dep % 60), "22:00", 100);
+        }
+        var single = new FlightAdjacency();
+        flights.subList(0, 100).forEach(single::add);
+        flights.subList(100, flights.size()).forEach(single::add);
+        var bulk = new FlightAdjacency();
+        bulk.addAll(flights.subList(0, 100));
+        bulk.addAll(flights.subList(100, flights.size()));
+        var date = LocalDate.of(2020, 4, 9);
+        for (int city = 0; city < cities.length; city++) {
+            var expected = single.outbound(city, date);
+            var actual = bulk.outbound(city, date);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertSame(expected.flightAt(i), actual.flightAt(i));
+                assertEquals(expected.departureAt(i), actual.departureAt(i));
+                assertEquals(expected.landingAt(i), actual.landingAt(i));
+                assertEquals(expected.toAt(i), actual.toAt(i));
+            }
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package net.kaaass.kflight.algorithm;
 
 import net.kaaass.kflight.data.structure.HashSet;
+import net.kaaass.kflight.data.structure.IntHashSet;
 import org.junit.Test;
 
+import java.util.BitSet;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * 哈希集合交集的单元测试
@@ -50,4 +54,31 @@ public class TestSetIntersect {
 
         assertEquals(setAns, SetIntersect.intersect(setA, setB));
     }
+
+    @Test
+    public void testIntersectInt() {
+        var setA = new IntHashSet();
+        var setB = new IntHashSet();
+        var bitsA = new BitSet();
+        var bitsB = new BitSet();
+        var setAns = new IntHashSet();
+        for (int i = 0; i < 300; i++) {
+            setA.insert(i * 2);
+            bitsA.set(i * 2);
+        }
+        for (int i = 0; i < 200; i++) {
+            setB.insert(i * 3);
+            bitsB.set(i * 3);
+            if (i * 3 % 2 == 0)
+                setAns.insert(i * 3);
+        }
+
+        assertEquals(setAns, SetIntersect.intersect(setA, setB));
+        assertEquals(setAns, SetIntersect.intersect(setB, setA));
+
+        var bitsAns = SetIntersect.intersect(bitsA, bitsB);
+        assertEquals(setAns.size(), bitsAns.cardinality());
+        bitsAns.stream().forEach(i -> assertTrue(setAns.inSet(i)));
+        assertEquals(300, bitsA.cardinality());
+    }
 }
@@ -4,9 +4,11 @@ import net.kaaass.kflight.algorithm.Sorter;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Random;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
 
 public class TestSort {
 
@@ -114,4 +116,31 @@ public class TestSort {
         tock("End test Sorter.");
         assertSort(data, list.toArray());
     }
+
+    /**
+     * 按键排序后相同键应保持原有顺序
+     */
+    private static void assertStable(Integer[] ret) {
+        for (int i = 1; i < ret.length; i++) {
+            assertTrue(ret[i - 1] / TEST_LEN <= ret[i] / TEST_LEN);
+            if (ret[i - 1] / TEST_LEN == ret[i] / TEST_LEN)
+                assertTrue(ret[i - 1] < ret[i]);
+        }
+    }
+
+    @Test
+    public void testStable() {
+        // 值为 键 * TEST_LEN + 原位置，键重复较多
+        var rand = new Random();
+        var data = new Integer[TEST_LEN];
+        for (int i = 0; i < TEST_LEN; i++)
+            data[i] = rand.nextInt(100) * TEST_LEN + i;
+        Comparator<Integer> byKey = Comparator.comparingInt(value -> value / TEST_LEN);
+        var ret = data.clone();
+        BiInsertSort.sort(ret, 0, ret.length, byKey);
+        assertStable(ret);
+        ret = data.clone();
+        StableHybridSort.sort(ret, 0, ret.length, byKey);
+        assertStable(ret);
+    }
 }
@@ -0,0 +1,80 @@
+package net.kaaass.kflight.data;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import net.kaaass.kflight.service.FlightService;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * 数据加载的单元测试
+ */
+public class TestDataLoader {
+
+    @Before
+    public void clear() {
+        FlightService.clear();
+    }
+
+    private static String flightsJson(int count, boolean complete) {
+        var builder = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                builder.append(',');
+            builder.append("{\"state\":\"BOOKING\",\"flightNo\":\"T").append(i)
+                    .append("\",\"airlineName\":\"测试航空\",")
+                    .append("\"departureTime\":\"2020-04-09 08:30:00\",\"landingTime\":\"2020-04-09 09:30:00\",")
+                    .append("\"from\":\"温州\",\"to\":\"杭州\",\"middle\":null,\"middleTime\":0,")
+                    .append("\"totalCabin\":2,\"restCabin\":2,\"ticketPrice\":").append(i).append(",\"tickets\":[]}");
+        }
+        if (complete)
+            builder.append(']');
+        return builder.toString();
+    }
+
+    /**
+     * 测试跨越多个批次的流式导入
+     */
+    @Test
+    public void testLoadInBatches() throws IOException {
+        int count = 10000;
+        var file = Files.createTempFile("kflight-flights", ".json");
+        try {
+            Files.writeString(file, flightsJson(count, true), StandardCharsets.UTF_8);
+            assertEquals(count, DataLoader.loadFlightFromJsonFile(file.toString()));
+        } finally {
+            Files.delete(file);
+        }
+        var all = FlightService.getAll();
+        assertEquals(count, all.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(Integer.valueOf(i), all.get(i).getID());
+            assertEquals("T" + i, all.get(i).getFlightNo());
+            assertEquals("杭州", all.get(i).getTo().getName());
+        }
+        assertEquals(0, DataLoader.loadFlightFromJson("[]"));
+    }
+
+    /**
+     * 测试格式错误的数据
+     */
+    @Test
+    public void testMalformed() throws IOException {
+        try {
+            DataLoader.loadFlightFromJson("{}");
+            fail();
+        } catch (JsonProcessingException ignored) {
+        }
+        try {
+            DataLoader.loadFlightFromJson(flightsJson(3, false));
+            fail();
+        } catch (JsonProcessingException ignored) {
+        }
+    }
+}
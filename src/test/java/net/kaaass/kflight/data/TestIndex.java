@@ -9,7 +9,12 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -100,6 +105,200 @@ public class TestIndex {
         assertTrue(ret.contains(data.get(2)));
     }
 
+    @Test
+    public void testCountAndPage() {
+        assertEquals(6, intIndex.countBetween(2, 4));
+        assertEquals(0, intIndex.countBetween(5, 6));
+        assertEquals(0, intIndex.countBetween(4, 2));
+        assertEquals(2, intIndex.rankOf(3));
+        assertEquals(data.get(7), intIndex.select(7));
+        assertNull(intIndex.select(8));
+
+        var ret = intIndex.findBetween(2, 4, 1, 2);
+        assertEquals(2, ret.size());
+        assertEquals(3, ret.get(0).getIntAttr());
+        assertEquals(3, ret.get(1).getIntAttr());
+
+        ret = intIndex.findBetween(2, 4, 5, 10);
+        assertEquals(1, ret.size());
+        assertEquals(4, ret.get(0).getIntAttr());
+
+        assertTrue(intIndex.findBetween(2, 4, 6, 10).isEmpty());
+        assertTrue(intIndex.findBetween(2, 4, 0, 0).isEmpty());
+    }
+
+    @Test
+    public void testScan() {
+        assertEquals(intIndex.findBetween(2, 4),
+                intIndex.scan(2, 4).collect(Collectors.toList()));
+        assertEquals(0, intIndex.scan(5, 6).count());
+        assertEquals(0, intIndex.scan(4, 2).count());
+        assertEquals(data.get(1), intIndex.scan(3, 100).findFirst().orElseThrow());
+
+        // 并行遍历保持顺序
+        var index = new Index<>(TestEntry::getIntAttr, Function.identity(), Comparator.naturalOrder());
+        for (int i = 0; i < 10000; i++)
+            index.addIndexFor(new TestEntry(i % 100, String.valueOf(i)));
+        var expected = index.findBetween(10, 89);
+        assertEquals(8000, expected.size());
+        assertEquals(expected, index.scan(10, 89).parallel().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testScanModified() {
+        var index = new Index<>(TestEntry::getIntAttr, Function.identity(), Comparator.naturalOrder());
+        var entries = new ArrayList<TestEntry>();
+        for (int i = 0; i < 1000; i++) {
+            entries.add(new TestEntry(i, String.valueOf(i)));
+            index.addIndexFor(entries.get(i));
+        }
+        // 遍历中修改索引不抛出异常，且只访问遍历时仍在索引中的对象
+        var visited = new ArrayList<TestEntry>();
+        index.scan(0, 999).forEach(entry -> {
+            visited.add(entry);
+            if (visited.size() % 100 == 0) {
+                index.removeIndexFor(entries.get(999 - visited.size() / 100));
+                index.addIndexFor(new TestEntry(-visited.size(), "new"));
+            }
+        });
+        assertTrue(visited.size() >= 990);
+        assertTrue(visited.size() <= 1000);
+        for (var entry : visited)
+            assertTrue(entry.intAttr >= 0);
+    }
+
+    @Test
+    public void testLongIndex() {
+        var index = Index.ofLong(TestEntry::getIntAttr, Integer::longValue);
+        data.forEach(index::addIndexFor);
+        assertEquals(data.size(), index.size());
+        assertEquals(data.get(2), index.findOneRaw(2));
+        assertEquals(intIndex.findAll(4), index.findAll(4));
+        assertEquals(intIndex.findBetween(2, 4), index.findBetween(2, 4));
+        assertEquals(intIndex.findBetweenHash(3, 7), index.findBetweenHash(3L, 7L));
+        assertEquals(6, index.countBetween(2, 4));
+        assertTrue(index.has(data.get(7)));
+        assertFalse(index.has(5));
+
+        assertTrue(index.removeIndexFor(data.get(3)));
+        assertFalse(index.removeIndexFor(data.get(3)));
+        assertEquals(1, index.findAll(3).size());
+        assertEquals(data.get(1), index.scan(3, 3).findFirst().orElseThrow());
+    }
+
+    @Test
+    public void testBPlusTreeIndex() {
+        var index = new Index<>(TestEntry::getIntAttr, Function.identity(), Comparator.naturalOrder(),
+                Index.Storage.B_PLUS_TREE);
+        data.forEach(index::addIndexFor);
+        assertEquals(intIndex.findAll(4), index.findAll(4));
+        assertEquals(intIndex.findBetween(2, 4), index.findBetween(2, 4));
+        assertEquals(intIndex.findBetween(2, 4, 1, 3), index.findBetween(2, 4, 1, 3));
+        assertEquals(intIndex.scan(1, 7).collect(Collectors.toList()),
+                index.scan(1, 7).parallel().collect(Collectors.toList()));
+        assertTrue(index.removeIndexFor(data.get(3)));
+        assertEquals(1, index.findAll(3).size());
+
+        var longIndex = Index.ofLong(TestEntry::getIntAttr, Integer::longValue, Index.Storage.B_PLUS_TREE);
+        data.forEach(longIndex::addIndexFor);
+        assertEquals(intIndex.findBetween(2, 4), longIndex.findBetween(2, 4));
+    }
+
+    @Test
+    public void testBulkLoad() {
+        var rand = new Random(233);
+        var entries = new ArrayList<TestEntry>();
+        for (int i = 0; i < 3000; i++)
+            entries.add(new TestEntry(rand.nextInt(300), String.valueOf(i)));
+        var expected = new Index<>(TestEntry::getIntAttr, Function.identity(), Comparator.naturalOrder());
+        entries.forEach(expected::addIndexFor);
+        var indexes = List.of(
+                new Index<>(TestEntry::getIntAttr, Function.identity(), Comparator.naturalOrder()),
+                new Index<>(TestEntry::getIntAttr, Function.identity(), Comparator.<Integer>naturalOrder(),
+                        Index.Storage.B_PLUS_TREE),
+                Index.ofLong(TestEntry::getIntAttr, Integer::longValue));
+        for (var index : indexes) {
+            // 空索引、大批量归并与小批量逐个插入
+            index.bulkLoad(entries.subList(0, 1000));
+            index.bulkLoad(entries.subList(1000, 2990));
+            index.bulkLoad(entries.subList(2990, 3000));
+            assertEquals(entries.size(), index.size());
+            for (int k = 0; k < entries.size(); k++)
+                assertSame(expected.select(k), index.select(k));
+            assertEquals(expected.findAll(42), index.findAll(42));
+            assertEquals(expected.countBetween(10, 20), index.countBetween(10, 20));
+            // 建立后可继续修改
+            assertTrue(index.removeIndexFor(entries.get(7)));
+            index.addIndexFor(entries.get(7));
+            assertEquals(expected.findAll(entries.get(7).intAttr).size(),
+                    index.findAll(entries.get(7).intAttr).size());
+        }
+    }
+
+    /**
+     * 测试并行建立期间有并发修改时，被修改的索引重新准备，内容不丢失
+     */
+    @Test
+    public void testBulkLoadAllConcurrent() throws Exception {
+        var entries = new ArrayList<TestEntry>();
+        for (int i = 0; i < 20000; i++)
+            entries.add(new TestEntry(i % 1000, String.valueOf(i)));
+        var extra = new ArrayList<TestEntry>();
+        for (int i = 0; i < 2000; i++)
+            extra.add(new TestEntry(i % 1000, "extra" + i));
+        var byInt = new Index<>(TestEntry::getIntAttr, Function.identity(), Comparator.naturalOrder());
+        var byLong = Index.ofLong(TestEntry::getIntAttr, Integer::longValue);
+        var executor = Executors.newSingleThreadExecutor();
+        var writer = executor.submit(() -> {
+            for (var entry : extra) {
+                byInt.addIndexFor(entry);
+                byLong.addIndexFor(entry);
+            }
+        });
+        Index.bulkLoadAll(List.of(byInt, byLong), entries);
+        writer.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        for (var index : List.of(byInt, byLong)) {
+            assertEquals(entries.size() + extra.size(), index.size());
+            for (int k = 1; k < index.size(); k++)
+                assertTrue(index.select(k - 1).intAttr <= index.select(k).intAttr);
+        }
+    }
+
+    @Test
+    public void testBulkLoadAll() {
+        var rand = new Random(233);
+        var entries = new ArrayList<TestEntry>();
+        for (int i = 0; i < 5000; i++)
+            entries.add(new TestEntry(rand.nextInt(500), String.valueOf(rand.nextInt(500))));
+        var byInt = new Index<>(TestEntry::getIntAttr, Function.identity(), Comparator.naturalOrder());
+        var byStr = new Index<>(TestEntry::getStrAttr, Function.identity(), Comparator.<String>naturalOrder(),
+                Index.Storage.B_PLUS_TREE);
+        var byLong = Index.ofLong(TestEntry::getIntAttr, Integer::longValue);
+        for (var index : List.of(byInt, byStr, byLong))
+            index.bulkLoad(entries.subList(0, 100));
+        var it = byInt.scan(0, 500).iterator();
+        it.next();
+        Index.bulkLoadAll(List.of(byInt, byStr, byLong), entries.subList(100, entries.size()));
+        // 存储结构已整体替换，遍历按排名在新结构上继续
+        int rest = 0;
+        while (it.hasNext()) {
+            it.next();
+            rest++;
+        }
+        assertEquals(99, rest);
+
+        var expectedStr = new Index<>(TestEntry::getStrAttr, Function.identity(), Comparator.<String>naturalOrder());
+        entries.forEach(expectedStr::addIndexFor);
+        for (int k = 0; k < entries.size(); k++) {
+            assertSame(expectedStr.select(k), byStr.select(k));
+            assertSame(byInt.select(k), byLong.select(k));
+        }
+        assertEquals(entries.stream().filter(entry -> entry.intAttr == 42).collect(Collectors.toList()),
+                byInt.findAll(42));
+    }
+
     @Test
     public void testRemove() {
         var index = new Index<>(TestEntry::getIntAttr, Function.identity(), Comparator.naturalOrder());
@@ -129,4 +328,38 @@ public class TestIndex {
         assertTrue(ans);
         assertEquals(0, index.size());
     }
+
+    @Test
+    public void testConcurrentRead() throws Exception {
+        var index = new Index<>(TestEntry::getIntAttr, Function.identity(), Comparator.naturalOrder());
+        for (int i = 0; i < 1000; i++)
+            index.addIndexFor(new TestEntry(i, "base"));
+        var pool = Executors.newFixedThreadPool(4);
+        var readers = new ArrayList<Future<?>>();
+        for (int t = 0; t < 3; t++) {
+            readers.add(pool.submit(() -> {
+                for (int round = 0; round < 200; round++) {
+                    // 初始的 1000 项始终存在
+                    var ret = index.findBetween(0, 999);
+                    assertTrue(ret.size() >= 1000);
+                    for (int i = 1; i < ret.size(); i++)
+                        assertTrue(ret.get(i - 1).getIntAttr() <= ret.get(i).getIntAttr());
+                }
+            }));
+        }
+        var writer = pool.submit(() -> {
+            for (int round = 0; round < 50; round++) {
+                for (int i = 0; i < 500; i++)
+                    index.addIndexFor(new TestEntry(i * 2 + 1, "extra"));
+                for (int i = 0; i < 500; i++)
+                    assertTrue(index.removeIndexFor(new TestEntry(i * 2 + 1, "extra")));
+            }
+        });
+        writer.get();
+        for (var reader : readers)
+            reader.get();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1000, index.size());
+    }
 }
@@ -0,0 +1,89 @@
+package net.kaaass.kflight.data.structure;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * B+ 树的单元测试
+ */
+public class TestBPlusTree {
+
+    @Test
+    public void testInsertAndFind() {
+        var tree = new BPlusTree<Integer, String>(Comparator.naturalOrder(), 3);
+        tree.insert(1, "1");
+        tree.insert(2, "2");
+        tree.insert(5, "3");
+        tree.insert(5, "4");
+        tree.insert(5, "5");
+        tree.insert(6, "6");
+        tree.insert(8, "7");
+        tree.insert(3, "8");
+        tree.insert(8, "9");
+        tree.insert(9, "10");
+        tree.insert(8, "11");
+        assertEquals(11, tree.size());
+        //
+        assertEquals("2", tree.findValue(2));
+        assertEquals("8", tree.findValue(3));
+        assertEquals("7", tree.findValue(8));
+        assertNull(tree.findValue(4));
+        assertNull(tree.findValue(10));
+        assertTrue(tree.has(5));
+        assertFalse(tree.has(7));
+        assertTrue(tree.has(8, "11"));
+        assertFalse(tree.has(8, "10"));
+        //
+        assertEquals(3, tree.rank(5));
+        assertEquals(6, tree.rankUpper(5));
+        assertEquals(11, tree.rankUpper(100));
+        // 相同下标保持插入顺序
+        var expected = new String[]{"1", "2", "8", "3", "4", "5", "6", "7", "9", "11", "10"};
+        var it = tree.iteratorAt(0);
+        for (var value : expected)
+            assertEquals(value, it.next());
+        assertFalse(it.hasNext());
+        assertEquals("9", tree.iteratorAt(8).next());
+        assertFalse(tree.iteratorAt(11).hasNext());
+    }
+
+    @Test
+    public void testDelete() {
+        var tree = new BPlusTree<Integer, String>(Comparator.naturalOrder(), 4);
+        var rand = new Random(233);
+        var keys = new ArrayList<Integer>();
+        for (int i = 0; i < 3000; i++) {
+            var key = rand.nextInt(300);
+            keys.add(key);
+            tree.insert(key, String.valueOf(i));
+        }
+        for (int i = 0; i < 2500; i++) {
+            var key = keys.remove(rand.nextInt(keys.size()));
+            assertTrue(tree.deletePair(key, tree.findValue(key)));
+        }
+        assertFalse(tree.deletePair(1000, "0"));
+        keys.sort(Comparator.naturalOrder());
+        assertEquals(keys.size(), tree.size());
+        // 排名与有序列表一致
+        for (var key : keys) {
+            assertEquals(keys.indexOf(key), tree.rank(key));
+            assertEquals(keys.lastIndexOf(key) + 1, tree.rankUpper(key));
+        }
+        var it = tree.iteratorAt(0);
+        for (int i = 0; i < keys.size(); i++)
+            assertTrue(tree.has(keys.get(i), it.next()));
+        assertFalse(it.hasNext());
+        // 全部删除
+        for (var key : keys)
+            assertTrue(tree.deletePair(key, tree.findValue(key)));
+        assertEquals(0, tree.size());
+        assertFalse(tree.iteratorAt(0).hasNext());
+        tree.insert(1, "1");
+        assertEquals("1", tree.findValue(1));
+    }
+}
@@ -0,0 +1,47 @@
+package net.kaaass.kflight.data.structure;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 有界堆的单元测试
+ */
+public class TestBoundedHeap {
+
+    @Test
+    public void testTopK() {
+        var heap = new BoundedHeap<Integer>(10, Comparator.naturalOrder());
+        var all = new ArrayList<Integer>();
+        var rand = new Random(233);
+        for (int i = 0; i < 1000; i++) {
+            int value = rand.nextInt(500);
+            all.add(value);
+            heap.offer(value);
+            assertTrue(heap.size() <= 10);
+        }
+        all.sort(Comparator.naturalOrder());
+        assertEquals(all.subList(0, 10), heap.toSortedList());
+        assertEquals(all.get(9), heap.peekWorst());
+    }
+
+    @Test
+    public void testOffer() {
+        var heap = new BoundedHeap<Integer>(3, Comparator.reverseOrder());
+        assertNull(heap.peekWorst());
+        assertTrue(heap.offer(1));
+        assertTrue(heap.offer(5));
+        assertTrue(heap.offer(3));
+        assertFalse(heap.offer(0));
+        assertFalse(heap.offer(1));
+        assertTrue(heap.offer(4));
+        assertEquals(3, heap.size());
+        assertEquals(Integer.valueOf(3), heap.peekWorst());
+        assertEquals(List.of(5, 4, 3), heap.toSortedList());
+    }
+}
@@ -63,9 +63,11 @@ public class TestHashSet {
         list.add("666");
         list.add("123456");
         list.add("www");
-        list.sort(Comparator.comparingInt(String::hashCode));
+        list.sort(Comparator.naturalOrder());
 
-        assertEquals(list, set.toList());
+        var result = set.toList();
+        result.sort(Comparator.naturalOrder());
+        assertEquals(list, result);
     }
 
     @Test
@@ -91,4 +93,50 @@ public class TestHashSet {
         assertNotEquals(setB, setC);
         assertEquals(setA, setC);
     }
+
+    @Test
+    public void testRehash() {
+        var set = new HashSet<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(set.insert(i * 31));
+        }
+        assertEquals(1000, set.size());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(set.inSet(i * 31));
+            assertFalse(set.inSet(i * 31 + 1));
+        }
+
+        var another = new HashSet<Integer>();
+        another.insert(-1);
+        another.insert(0);
+        another.addAll(set);
+        assertEquals(1001, another.size());
+        assertNotEquals(set, another);
+        set.insert(-1);
+        assertEquals(set, another);
+        assertEquals(set.hashCode(), another.hashCode());
+    }
+
+    @Test
+    public void testIntHashSet() {
+        var set = new IntHashSet();
+        assertTrue(set.insert(Integer.MIN_VALUE));
+        assertFalse(set.insert(Integer.MIN_VALUE));
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(set.insert(i));
+        }
+        assertFalse(set.insert(500));
+        assertEquals(1001, set.size());
+        assertTrue(set.inSet(Integer.MIN_VALUE));
+        assertTrue(set.inSet(999));
+        assertFalse(set.inSet(1000));
+        assertFalse(set.inSet(-1));
+        assertEquals(1001, set.toArray().length);
+
+        var another = new IntHashSet(4);
+        another.addAll(set);
+        assertEquals(set, another);
+        another.insert(-1);
+        assertNotEquals(set, another);
+    }
 }
@@ -0,0 +1,83 @@
+package net.kaaass.kflight.data.structure;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * long 下标红黑树的单元测试
+ */
+public class TestLongRBTree {
+
+    @Test
+    public void testInsertAndFind() {
+        var tree = new LongRBTree<String>();
+        tree.insert(1, "1");
+        tree.insert(2, "2");
+        tree.insert(5, "3");
+        tree.insert(5, "4");
+        tree.insert(5, "5");
+        tree.insert(6, "6");
+        tree.insert(8, "7");
+        tree.insert(3, "8");
+        tree.insert(8, "9");
+        tree.insert(9, "10");
+        tree.insert(8, "11");
+        assertEquals(11, tree.size());
+        //
+        assertEquals("2", tree.findValue(2));
+        assertEquals("8", tree.findValue(3));
+        assertNull(tree.findValue(4));
+        assertTrue(tree.has(5));
+        assertFalse(tree.has(7));
+        assertTrue(tree.has(8, "11"));
+        assertFalse(tree.has(8, "10"));
+        //
+        assertEquals(3, tree.rank(5));
+        assertEquals(6, tree.rankUpper(5));
+        assertEquals(3, tree.countBetween(8, 8));
+        // 相同下标保持插入顺序
+        var it = tree.iteratorAt(3);
+        assertEquals("3", it.next());
+        assertEquals("4", it.next());
+        assertEquals("5", it.next());
+        assertEquals("6", it.next());
+    }
+
+    @Test
+    public void testDelete() {
+        var tree = new LongRBTree<String>();
+        var rand = new Random(233);
+        var keys = new ArrayList<Long>();
+        for (int i = 0; i < 2000; i++) {
+            long key = rand.nextInt(500) - 250;
+            keys.add(key);
+            tree.insert(key, String.valueOf(i));
+        }
+        for (int i = 0; i < 1500; i++) {
+            var pos = rand.nextInt(keys.size());
+            long key = keys.remove(pos);
+            assertTrue(tree.deletePair(key, tree.findValue(key)));
+        }
+        assertFalse(tree.deletePair(1000, "0"));
+        keys.sort(Comparator.naturalOrder());
+        assertEquals(keys.size(), tree.size());
+        // 排名与有序列表一致
+        for (int i = 0; i < keys.size(); i++) {
+            long key = keys.get(i);
+            assertEquals(keys.indexOf(key), tree.rank(key));
+            assertEquals(keys.lastIndexOf(key) + 1, tree.rankUpper(key));
+        }
+        var it = tree.iteratorAt(0);
+        for (int i = 0; i < keys.size(); i++)
+            it.next();
+        assertFalse(it.hasNext());
+        tree.clear();
+        assertEquals(0, tree.size());
+        assertFalse(tree.iteratorAt(0).hasNext());
+    }
+}
@@ -0,0 +1,83 @@
+package net.kaaass.kflight.data.structure;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+/**
+ * 无锁多生产者多消费者队列的单元测试
+ */
+public class TestMPMCQueue {
+
+    @Test
+    public void testPushPop() {
+        var Q = new MPMCQueue<Integer>();
+
+        assertTrue(Q.isEmpty());
+        assertNull(Q.popFront());
+
+        Q.push(1);
+        Q.push(2);
+        Q.push(3);
+        assertEquals(3, Q.size());
+        assertEquals(Integer.valueOf(1), Q.front());
+
+        var ret = new ArrayList<Integer>();
+        Q.forEach(ret::add);
+        assertEquals(Arrays.asList(1, 2, 3), ret);
+
+        assertEquals(Integer.valueOf(1), Q.popFront());
+        assertEquals(Integer.valueOf(2), Q.popFront());
+        assertEquals(Integer.valueOf(3), Q.popFront());
+        assertNull(Q.popFront());
+        assertNull(Q.front());
+        assertEquals(0, Q.size());
+    }
+
+    /**
+     * 测试多线程同时入队、出队时，每个元素恰被取出一次
+     */
+    @Test
+    public void testConcurrentPushPop() throws InterruptedException {
+        int producers = 4, consumers = 4, count = 20000;
+        int total = producers * count;
+        var Q = new MPMCQueue<Integer>();
+        var seen = new AtomicIntegerArray(total);
+        var received = new AtomicInteger();
+        var threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            int base = p * count;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < count; i++)
+                    Q.push(base + i);
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            threads.add(new Thread(() -> {
+                while (received.get() < total) {
+                    var cur = Q.popFront();
+                    if (cur == null) {
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    seen.incrementAndGet(cur);
+                    received.incrementAndGet();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (var thread : threads)
+            thread.join();
+
+        assertEquals(total, received.get());
+        for (int i = 0; i < total; i++)
+            assertEquals(1, seen.get(i));
+        assertTrue(Q.isEmpty());
+        assertEquals(0, Q.size());
+    }
+}
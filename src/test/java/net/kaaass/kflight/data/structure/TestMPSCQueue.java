@@ -0,0 +1,79 @@
+package net.kaaass.kflight.data.structure;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * 无锁多生产者单消费者队列的单元测试
+ */
+public class TestMPSCQueue {
+
+    @Test
+    public void testPushPop() {
+        var Q = new MPSCQueue<Integer>();
+
+        assertEquals(0, Q.size());
+        assertTrue(Q.isEmpty());
+        assertNull(Q.popFront());
+        assertNull(Q.front());
+
+        Q.push(1);
+        Q.push(2);
+        assertEquals(Integer.valueOf(1), Q.front());
+        Q.popFront();
+        Q.push(3);
+
+        var ret = new ArrayList<Integer>();
+        Q.forEach(ret::add);
+        assertEquals(Arrays.asList(2, 3), ret);
+
+        assertEquals(2, Q.size());
+        assertEquals(Integer.valueOf(2), Q.popFront());
+        assertEquals(Integer.valueOf(3), Q.popFront());
+        assertNull(Q.popFront());
+        assertEquals(0, Q.size());
+        assertTrue(Q.isEmpty());
+    }
+
+    /**
+     * 测试多线程入队时，单消费者按各生产者的入队顺序取得全部元素
+     */
+    @Test
+    public void testConcurrentPush() throws InterruptedException {
+        int producers = 4, count = 20000;
+        var Q = new MPSCQueue<long[]>();
+        var threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            int id = p;
+            var thread = new Thread(() -> {
+                for (int i = 0; i < count; i++)
+                    Q.push(new long[]{id, i});
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        var last = new int[producers];
+        Arrays.fill(last, -1);
+        int received = 0;
+        while (received < producers * count) {
+            var cur = Q.popFront();
+            if (cur == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int id = (int) cur[0];
+            assertEquals(last[id] + 1, cur[1]);
+            last[id] = (int) cur[1];
+            received++;
+        }
+        for (var thread : threads)
+            thread.join();
+        assertTrue(Q.isEmpty());
+        assertEquals(0, Q.size());
+    }
+}
@@ -2,7 +2,9 @@ package net.kaaass.kflight.data.structure;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -239,4 +241,135 @@ public class TestRBTree {
         assertTrue(tree.has(5, "5"));
         assertFalse(tree.has(5, "7"));
     }
+
+    @Test
+    public void testRankAndSelect() {
+        var tree = new RBTree<Integer, String>(Comparator.naturalOrder());
+        tree.insert(1, "1");
+        tree.insert(2, "2");
+        tree.insert(5, "3");
+        tree.insert(5, "4");
+        tree.insert(5, "5");
+        tree.insert(6, "6");
+        tree.insert(8, "7");
+        tree.insert(3, "8");
+        tree.insert(8, "9");
+        tree.insert(9, "10");
+        tree.insert(8, "11");
+        //
+        assertEquals(0, tree.rank(0));
+        assertEquals(0, tree.rank(1));
+        assertEquals(3, tree.rank(5));
+        assertEquals(6, tree.rankUpper(5));
+        assertEquals(6, tree.rank(6));
+        assertEquals(11, tree.rankUpper(100));
+        //
+        assertEquals("1", tree.select(0).value);
+        assertEquals("3", tree.select(3).value);
+        assertEquals("5", tree.select(5).value);
+        assertEquals("10", tree.select(10).value);
+        assertNull(tree.select(11));
+        assertNull(tree.select(-1));
+        //
+        assertEquals(5, tree.rankOf(tree.findUpperBound(5)));
+        assertEquals(7, tree.rankOf(tree.findLowerBound(8)));
+        //
+        assertEquals(3, tree.countBetween(5, 5));
+        assertEquals(4, tree.countBetween(4, 6));
+        assertEquals(0, tree.countBetween(7, 7));
+        assertEquals(0, tree.countBetween(8, 1));
+        assertEquals(11, tree.countBetween(0, 9));
+    }
+
+    @Test
+    public void testRankAfterDelete() {
+        var tree = new RBTree<Integer, Integer>(Comparator.naturalOrder());
+        var rand = new Random(233);
+        var keys = new ArrayList<Integer>();
+        for (int i = 0; i < 2000; i++) {
+            var key = rand.nextInt(500);
+            keys.add(key);
+            tree.insert(key, i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            var pos = rand.nextInt(keys.size());
+            var key = keys.remove(pos);
+            tree.delete(tree.findOne(key));
+        }
+        keys.sort(Comparator.naturalOrder());
+        assertEquals(keys.size(), tree.size());
+        for (int i = 0; i < keys.size(); i++) {
+            var node = tree.select(i);
+            assertEquals(keys.get(i), node.key);
+            assertEquals(i, tree.rankOf(node));
+        }
+        for (int key = 0; key < 500; key += 7) {
+            var low = key;
+            var cnt = (int) keys.stream().filter(k -> k >= low && k <= low + 20).count();
+            assertEquals(cnt, tree.countBetween(low, low + 20));
+        }
+        tree.clear();
+        assertEquals(0, tree.size());
+        assertNull(tree.getMinimumNode());
+    }
+
+    /**
+     * 检查子树的红黑性质与子树大小
+     *
+     * @return 子树黑高
+     */
+    private static <K, V> int checkNode(RBTree.TreeNode<K, V> node) {
+        if (node == null || node.count == 0)
+            return 1;
+        if (node.color == RBTree.NodeColor.RED) {
+            assertNotEquals(RBTree.NodeColor.RED, node.left.color);
+            assertNotEquals(RBTree.NodeColor.RED, node.right.color);
+        }
+        int left = checkNode(node.left);
+        assertEquals(left, checkNode(node.right));
+        int leftCount = node.left == null ? 0 : node.left.count;
+        int rightCount = node.right == null ? 0 : node.right.count;
+        assertEquals(leftCount + rightCount + 1, node.count);
+        return left + (node.color == RBTree.NodeColor.BLACK ? 1 : 0);
+    }
+
+    private static <K, V> void checkTree(RBTree<K, V> tree) {
+        var root = tree.getMinimumNode();
+        if (root == null)
+            return;
+        while (root.parent != null && root.parent.count > 0)
+            root = root.parent;
+        assertEquals(RBTree.NodeColor.BLACK, root.color);
+        assertEquals(tree.size(), root.count);
+        checkNode(root);
+    }
+
+    @Test
+    public void testBuild() {
+        var rand = new Random(233);
+        for (int n = 0; n < 70; n++) {
+            var keys = new ArrayList<Integer>();
+            var values = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++) {
+                keys.add(rand.nextInt(20));
+                values.add(i);
+            }
+            keys.sort(Comparator.naturalOrder());
+            var tree = new RBTree<Integer, Integer>(Comparator.naturalOrder());
+            tree.build(keys, values);
+            checkTree(tree);
+            assertEquals(n, tree.size());
+            for (int i = 0; i < n; i++)
+                assertEquals(values.get(i), tree.select(i).value);
+            // 建立后可继续插入与删除
+            for (int i = 0; i < 30; i++) {
+                tree.insert(rand.nextInt(20), n + i);
+                checkTree(tree);
+            }
+            for (int i = 0; i < n / 2; i++) {
+                tree.delete(tree.select(rand.nextInt(tree.size())));
+                checkTree(tree);
+            }
+        }
+    }
 }
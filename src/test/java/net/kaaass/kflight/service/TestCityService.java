@@ -0,0 +1,46 @@
+package net.kaaass.kflight.service;
+
+import net.kaaass.kflight.data.entry.EntryCity;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 城市服务的单元测试
+ */
+public class TestCityService {
+
+    @Before
+    public void clear() {
+        FlightService.clear();
+        CityService.clear();
+    }
+
+    /**
+     * 测试城市编号分配与查找
+     */
+    @Test
+    public void testCityId() {
+        var cities = new EntryCity[200];
+        for (int i = 0; i < cities.length; i++) {
+            cities[i] = new EntryCity("city" + i);
+            CityService.addEntry(cities[i]);
+        }
+        assertEquals(cities.length, CityService.idBound());
+        for (int i = 0; i < cities.length; i++) {
+            assertEquals(i, cities[i].getId());
+            assertSame(cities[i], CityService.findById(i).orElseThrow());
+            assertSame(cities[i], CityService.findByName("city" + i).orElseThrow());
+        }
+        CityService.removeEntry(cities[3]);
+        assertTrue(CityService.findById(3).isEmpty());
+        assertTrue(CityService.findByName("city3").isEmpty());
+        assertTrue(CityService.findById(-1).isEmpty());
+        assertTrue(CityService.findById(cities.length).isEmpty());
+        // 编号不复用
+        var city = new EntryCity("another");
+        CityService.addEntry(city);
+        assertEquals(cities.length, city.getId());
+    }
+}
@@ -0,0 +1,85 @@
+package net.kaaass.kflight.service;
+
+import net.kaaass.kflight.data.DataLoader;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+/**
+ * 航班服务的单元测试
+ */
+public class TestFlightService {
+
+    @Before
+    public void loadData() throws IOException {
+        FlightService.clear();
+        DataLoader.loadFlightFromJsonResource("/flights.json");
+    }
+
+    /**
+     * 测试城市时间索引的日期范围查询
+     */
+    @Test
+    public void testFindByCityAndDate() {
+        var from = CityService.findByName("温州").orElseThrow();
+        var to = CityService.findByName("长春").orElseThrow();
+        var date = LocalDate.of(2020, 4, 9);
+
+        var departs = FlightService.findByFromAndDate(from, date);
+        assertFalse(departs.isEmpty());
+        for (var flight : departs) {
+            assertEquals(from, flight.getFrom());
+            assertEquals(date, flight.getDepartureTime().toLocalDate());
+        }
+
+        var lands = FlightService.findByToAndDate(to, date);
+        assertFalse(lands.isEmpty());
+        for (var flight : lands) {
+            assertEquals(to, flight.getTo());
+            assertEquals(date, flight.getDepartureTime().toLocalDate());
+        }
+
+        var direct = FlightService.findAllByFromToAndDate(from, to, date);
+        for (var flight : direct) {
+            assertEquals(from, flight.getFrom());
+            assertEquals(to, flight.getTo());
+            assertEquals(date, flight.getDepartureTime().toLocalDate());
+        }
+    }
+
+    /**
+     * 测试出港航班邻接表
+     */
+    @Test
+    public void testOutbound() {
+        var from = CityService.findByName("温州").orElseThrow();
+        var date = LocalDate.of(2020, 4, 9);
+
+        var departs = FlightService.findByFromAndDate(from, date);
+        var slot = FlightService.findOutbound(from, date);
+        assertEquals(departs.size(), slot.size());
+        for (int i = 0; i < slot.size(); i++) {
+            assertTrue(departs.contains(slot.flightAt(i)));
+            assertEquals(slot.flightAt(i).getTo().getId(), slot.toAt(i));
+            if (i > 0)
+                assertTrue(slot.departureAt(i - 1) <= slot.departureAt(i));
+        }
+        // 二分查找
+        var mid = slot.departureAt(slot.size() / 2);
+        var pos = slot.lowerBound(mid);
+        assertEquals(mid, slot.departureAt(pos));
+        assertTrue(pos == 0 || slot.departureAt(pos - 1) < mid);
+        assertEquals(slot.size(), slot.lowerBound(Long.MAX_VALUE));
+        // 删除后同步更新
+        var removed = slot.flightAt(0);
+        FlightService.removeEntry(removed);
+        var updated = FlightService.findOutbound(from, date);
+        assertEquals(slot.size() - 1, updated.size());
+        for (int i = 0; i < updated.size(); i++)
+            assertNotSame(removed, updated.flightAt(i));
+    }
+}
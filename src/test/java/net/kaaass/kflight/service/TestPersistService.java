@@ -0,0 +1,215 @@
+package net.kaaass.kflight.service;
+
+import net.kaaass.kflight.KflightApplication;
+import net.kaaass.kflight.data.DataLoader;
+import net.kaaass.kflight.data.entry.EntryFlight;
+import net.kaaass.kflight.data.entry.EntryTicketOrder;
+import net.kaaass.kflight.event.FlightDelayedEvent;
+import net.kaaass.kflight.eventhandle.SubscribeEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * 预写日志持久化的单元测试
+ */
+public class TestPersistService {
+
+    private Path snapshot;
+
+    private Path file;
+
+    @Before
+    public void openLog() throws IOException {
+        snapshot = Files.createTempFile("kflight-snapshot", ".bin");
+        file = Files.createTempFile("kflight-wal", ".log");
+        Files.delete(snapshot);
+        Files.delete(file);
+        FlightService.clear();
+        PersistService.open(snapshot, file);
+    }
+
+    @After
+    public void closeLog() throws IOException {
+        PersistService.close();
+        FlightService.clear();
+        Files.deleteIfExists(snapshot);
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * 关闭后清空内存，再由快照与日志恢复
+     */
+    private void restart() throws IOException {
+        PersistService.close();
+        FlightService.clear();
+        PersistService.open(snapshot, file);
+    }
+
+    private static List<String> snapshot() {
+        return FlightService.getAll().stream()
+                .map(flight -> flight.getID() + " " + flight.getFlightNo() + " " + flight.getState()
+                        + " " + flight.getDepartureTime() + " " + flight.getRestCabin() + " "
+                        + flight.getTickets().stream()
+                        .map(order -> order.getID() + ":" + order.getPhone())
+                        .sorted()
+                        .collect(Collectors.joining(","))
+                        + " " + TicketService.getTicketsInQueue(flight, 0, Integer.MAX_VALUE).stream()
+                        .map(EntryTicketOrder::getPhone)
+                        .collect(Collectors.joining(",")))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        DataLoader.loadFlightFromJsonResource("/flights.json");
+        var flight = FlightService.getById(3).orElseThrow();
+        flight.setState(EntryFlight.State.BOOKING);
+        var rest = flight.getRestCabin();
+
+        // 售完后排队，退票补票
+        for (int i = 0; i < rest + 2; i++)
+            TicketService.orderTicket(new EntryTicketOrder(flight, "p" + i));
+        TicketService.withdrawTicket(flight, "p0");
+        // 航班变更使 ID 重排
+        FlightService.removeEntry(FlightService.getById(0).orElseThrow());
+        FlightService.changeState(1, EntryFlight.State.DELAYED,
+                FlightService.getById(1).orElseThrow().getDepartureTime().plusHours(2));
+        var moved = FlightService.getById(5).orElseThrow();
+        TicketService.orderTicket(new EntryTicketOrder(moved, "q"));
+        PersistService.sync();
+
+        var before = snapshot();
+        restart();
+        assertEquals(before, snapshot());
+        assertEquals(1, TicketService.getQueueSize(FlightService.findByFlightNo(flight.getFlightNo()).orElseThrow()));
+
+        // 恢复后继续记录
+        var again = FlightService.findByFlightNo(flight.getFlightNo()).orElseThrow();
+        TicketService.withdrawTicket(again, "p1");
+        before = snapshot();
+        restart();
+        assertEquals(before, snapshot());
+    }
+
+    @Test
+    public void testTornTail() throws Exception {
+        DataLoader.loadFlightFromJsonResource("/flights.json");
+        int count = FlightService.getAll().size();
+        PersistService.close();
+        // 模拟写入中途崩溃
+        Files.write(file, new byte[]{0, 0, 1, 0, 1, 2, 3}, StandardOpenOption.APPEND);
+        FlightService.clear();
+        PersistService.open(snapshot, file);
+        assertEquals(count, FlightService.getAll().size());
+
+        FlightService.removeEntry(FlightService.getById(0).orElseThrow());
+        PersistService.sync();
+        restart();
+        assertEquals(count - 1, FlightService.getAll().size());
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        DataLoader.loadFlightFromJsonResource("/flights.json");
+        var flight = FlightService.getById(2).orElseThrow();
+        flight.setState(EntryFlight.State.BOOKING);
+        var rest = flight.getRestCabin();
+        for (int i = 0; i < rest + 3; i++)
+            TicketService.orderTicket(new EntryTicketOrder(flight, "p" + i));
+        TicketService.withdrawTicket(flight, "p1");
+        FlightService.removeEntry(FlightService.getById(0).orElseThrow());
+        PersistService.checkpoint();
+        var checkpointed = snapshot();
+
+        // 检查点之后的变更记录于新一代日志
+        var moved = FlightService.getById(1).orElseThrow();
+        TicketService.withdrawTicket(flight, "p2");
+        FlightService.removeEntry(moved);
+        PersistService.sync();
+        var before = snapshot();
+        restart();
+        assertEquals(before, snapshot());
+
+        // 快照已写入而日志未重置时，旧日志不再重放
+        PersistService.checkpoint();
+        before = snapshot();
+        PersistService.close();
+        var stale = Files.readAllBytes(file);
+        FlightService.clear();
+        PersistService.open(snapshot, null);
+        PersistService.checkpoint();
+        PersistService.close();
+        Files.write(file, stale);
+        FlightService.clear();
+        PersistService.open(snapshot, file);
+        assertEquals(before, snapshot());
+        assertNotEquals(checkpointed, snapshot());
+    }
+
+    /**
+     * 快照缺失而日志较新时拒绝启动，且不删除日志
+     */
+    @Test
+    public void testMissingSnapshot() throws Exception {
+        DataLoader.loadFlightFromJsonResource("/flights.json");
+        PersistService.checkpoint();
+        FlightService.removeEntry(FlightService.getById(0).orElseThrow());
+        PersistService.sync();
+        PersistService.close();
+        var log = Files.readAllBytes(file);
+        Files.delete(snapshot);
+        FlightService.clear();
+        try {
+            PersistService.open(snapshot, file);
+            fail();
+        } catch (IOException ignored) {
+        }
+        assertArrayEquals(log, Files.readAllBytes(file));
+        // 失败后可重新打开
+        PersistService.open(null, null);
+    }
+
+    /**
+     * 记录航班延误通知
+     */
+    public static class DelayedCounter {
+
+        final AtomicInteger count = new AtomicInteger();
+
+        @SubscribeEvent
+        public void onFlightDelayed(FlightDelayedEvent event) {
+            count.incrementAndGet();
+        }
+    }
+
+    /**
+     * 重放状态变更时不重复发出延误通知
+     */
+    @Test
+    public void testReplayNoNotification() throws Exception {
+        DataLoader.loadFlightFromJsonResource("/flights.json");
+        var counter = new DelayedCounter();
+        KflightApplication.EVENT_BUS.register(counter);
+        try {
+            FlightService.changeState(0, EntryFlight.State.CANCELED, null);
+            PersistService.sync();
+            assertEquals(1, counter.count.get());
+            restart();
+            assertEquals(EntryFlight.State.CANCELED, FlightService.getById(0).orElseThrow().getState());
+            assertEquals(1, counter.count.get());
+        } finally {
+            KflightApplication.EVENT_BUS.unregister(counter);
+        }
+    }
+}
@@ -1,18 +1,16 @@
 package net.kaaass.kflight.service;
 
 import net.kaaass.kflight.data.DataLoader;
+import net.kaaass.kflight.data.entry.EntryFlight;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.time.Duration;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -29,58 +27,74 @@ public class TestPlanService {
     }
 
     /**
-     * 由航班号生成转机计划
-     */
-    private PlanService.FlightPlan planOf(String... flightNos) {
-        var flights = Stream.of(flightNos)
-                .map(FlightService::findByFlightNo)
-                .map(Optional::orElseThrow)
-                .collect(Collectors.toList());
-        float totalCost = flights.stream()
-                .reduce(0F, (acc, flight) -> acc + flight.getTicketPrice(), Float::sum);
-        long totalTime =
-                Duration.between(flights.get(0).getDepartureTime(),
-                        flights.get(flights.size() - 1).getLandingTime()).toSeconds();
-        return new PlanService.FlightPlan(totalCost, totalTime, flights);
-    }
-
-    /**
-     * 测试单城市间隔转机
+     * 测试转机计划规划
      */
     @Test
-    public void testSearchGapOne() {
+    public void testPlan() {
         var from = CityService.findByName("温州").orElseThrow();
         var to = CityService.findByName("长春").orElseThrow();
-        var result = new ArrayList<PlanService.FlightPlan>();
-        var limit = PlanService.searchGapOne(result, from, to, LocalDate.of(2020, 4, 9), 100);
-        System.out.println("Search limit used: " + (100 - limit));
-        assertEquals(3, result.size()); // FIXME: 有一定概率缺少一班？？？
-        assertTrue(result.contains(planOf("CA0809", "CA1014")));
-        assertTrue(result.contains(planOf("AQ1013", "AQ1417")));
-        assertTrue(result.contains(planOf("CA0910", "CA1519")));
+        var date = LocalDate.of(2020, 4, 9);
+        var result = PlanService.plan(from, to, date);
+        System.out.println(result);
+        assertFalse(result.isEmpty());
+        for (var plan : result) {
+            var flights = plan.getFlights();
+            assertEquals(from, flights.get(0).getFrom());
+            assertEquals(to, flights.get(flights.size() - 1).getTo());
+            for (int i = 1; i < flights.size(); i++) {
+                assertEquals(flights.get(i - 1).getTo(), flights.get(i).getFrom());
+                assertTrue(Duration.between(flights.get(i - 1).getLandingTime(),
+                        flights.get(i).getDepartureTime()).toMinutes() >= 40);
+            }
+        }
     }
 
     /**
-     * 测试多间隔转机
+     * 测试仅保留最优若干方案
      */
     @Test
-    public void testSearchGapMulti() {
+    public void testPlanLimit() {
         var from = CityService.findByName("温州").orElseThrow();
         var to = CityService.findByName("长春").orElseThrow();
-        var result = new ArrayList<PlanService.FlightPlan>();
-        var limit = PlanService.searchGapMulti(result, from, to, LocalDate.of(2020, 4, 9), 100);
-        System.out.println("Search limit used: " + (100 - limit));
+        var date = LocalDate.of(2020, 4, 9);
+        var all = PlanService.plan(from, to, date);
+        var comparator = PlanService.planComparator(from, to);
+        for (int i = 1; i < all.size(); i++)
+            assertTrue(comparator.compare(all.get(i - 1), all.get(i)) <= 0);
+        var limit = Math.max(1, all.size() / 2);
+        var top = PlanService.plan(from, to, date, limit);
+        assertEquals(Math.min(limit, all.size()), top.size());
+        for (int i = 0; i < top.size(); i++)
+            assertEquals(0, comparator.compare(all.get(i), top.get(i)));
     }
 
     /**
-     * 测试转机计划规划
+     * 测试方案缓存及其失效
      */
     @Test
-    public void testPlan() {
+    public void testPlanCache() throws Exception {
         var from = CityService.findByName("温州").orElseThrow();
         var to = CityService.findByName("长春").orElseThrow();
         var date = LocalDate.of(2020, 4, 9);
-        var result = PlanService.plan(from, to, date);
-        System.out.println(result);
+        var first = PlanService.plan(from, to, date, 2);
+        var stats = PlanService.getCacheStats();
+        // 命中缓存
+        PlanService.plan(from, to, date, 1);
+        assertEquals(first, PlanService.plan(from, to, date, 2));
+        assertEquals(stats.getHits() + 2, PlanService.getCacheStats().getHits());
+        // 其他日期的航班变更不影响缓存
+        var other = FlightService.findBetween(date.plusDays(1).atStartOfDay(), date.plusDays(2).atStartOfDay())
+                .stream().findFirst().orElseThrow();
+        FlightService.changeState(other.getID(), EntryFlight.State.PREPARE, null);
+        assertEquals(stats.getInvalidations(), PlanService.getCacheStats().getInvalidations());
+        // 当日航班变更使缓存失效
+        var flight = first.get(0).getFlights().get(0);
+        FlightService.changeState(flight.getID(), EntryFlight.State.PREPARE, null);
+        assertTrue(PlanService.getCacheStats().getInvalidations() > stats.getInvalidations());
+        var misses = PlanService.getCacheStats().getMisses();
+        var after = PlanService.plan(from, to, date, 2);
+        assertEquals(misses + 1, PlanService.getCacheStats().getMisses());
+        for (var plan : after)
+            assertFalse(plan.getFlights().contains(flight));
     }
 }
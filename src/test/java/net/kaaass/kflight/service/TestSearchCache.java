@@ -0,0 +1,110 @@
+package net.kaaass.kflight.service;
+
+import net.kaaass.kflight.algorithm.Sorter;
+import net.kaaass.kflight.data.DataLoader;
+import net.kaaass.kflight.data.entry.EntryFlight;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 查询结果缓存的单元测试
+ */
+public class TestSearchCache {
+
+    @Before
+    public void loadData() throws IOException {
+        FlightService.clear();
+        DataLoader.loadFlightFromJsonResource("/flights.json");
+    }
+
+    @Test
+    public void testFindAndInvalidate() throws Exception {
+        var from = CityService.findByName("温州").orElseThrow();
+        var date = LocalDate.of(2020, 4, 9);
+        var loads = new AtomicInteger();
+        SearchCache.Loader loader = () -> {
+            loads.incrementAndGet();
+            var result = FlightService.findByFromAndDate(from, date);
+            Sorter.sortFlight(result, "dpR");
+            return result;
+        };
+        String key = "test:from-date:温州:2020-04-09:dpR";
+
+        var first = SearchCache.find(key, SearchCache.stampOf(from, date, "dpR"), loader);
+        var second = SearchCache.find(key, SearchCache.stampOf(from, date, "dpR"), loader);
+        assertEquals(1, loads.get());
+        assertEquals(first, second);
+
+        // 其他日期的变更不影响
+        var other = FlightService.findByFromAndDate(from, date.plusDays(1));
+        if (!other.isEmpty()) {
+            FlightService.changeState(other.get(0).getID(), EntryFlight.State.PREPARE, null);
+            SearchCache.find(key, SearchCache.stampOf(from, date, "dpR"), loader);
+            assertEquals(1, loads.get());
+        }
+
+        // 当日航班余票变化使按余票排序的缓存失效，不按余票排序的不受影响
+        String unsorted = "test:from-date:温州:2020-04-09:dp";
+        SearchCache.find(unsorted, SearchCache.stampOf(from, date, "dp"), loader);
+        assertEquals(2, loads.get());
+        SearchCache.touchSeats(first.get(0));
+        SearchCache.find(unsorted, SearchCache.stampOf(from, date, "dp"), loader);
+        assertEquals(2, loads.get());
+        SearchCache.find(key, SearchCache.stampOf(from, date, "dpR"), loader);
+        assertEquals(3, loads.get());
+
+        // 删除航班导致 ID 重排，全部失效
+        FlightService.removeEntry(FlightService.getById(0).orElseThrow());
+        List<EntryFlight> after = SearchCache.find(key, SearchCache.stampOf(from, date, "dpR"), loader);
+        assertEquals(4, loads.get());
+        assertEquals(FlightService.findByFromAndDate(from, date).size(), after.size());
+    }
+
+    @Test
+    public void testNoCache() throws Exception {
+        var loads = new AtomicInteger();
+        var stamp = SearchCache.stampOf(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 12, 31), "dpR");
+        assertEquals(SearchCache.NO_CACHE, stamp);
+        SearchCache.find("test:between", stamp, () -> {
+            loads.incrementAndGet();
+            return List.of();
+        });
+        SearchCache.find("test:between", stamp, () -> {
+            loads.incrementAndGet();
+            return List.of();
+        });
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * 测试分页共用完整结果的缓存
+     */
+    @Test
+    public void testFindPage() throws Exception {
+        var start = LocalDate.of(2020, 4, 9);
+        var loads = new AtomicInteger();
+        SearchCache.Loader loader = () -> {
+            loads.incrementAndGet();
+            var result = FlightService.findBetween(start.atStartOfDay(), start.plusDays(2).atStartOfDay());
+            Sorter.sortFlight(result, "pR");
+            return result;
+        };
+        var stamp = SearchCache.stampOf(start, start.plusDays(2), "pR");
+        var all = SearchCache.findPage("test:between:pR", stamp, loader, 0, Integer.MAX_VALUE);
+        assertTrue(all.size() > 10);
+        var pages = new ArrayList<EntryFlight>();
+        for (int offset = 0; offset < all.size(); offset += 7)
+            pages.addAll(SearchCache.findPage("test:between:pR", stamp, loader, offset, 7));
+        assertEquals(all, pages);
+        assertTrue(SearchCache.findPage("test:between:pR", stamp, loader, all.size() + 5, 7).isEmpty());
+        assertEquals(1, loads.get());
+    }
+}
@@ -0,0 +1,247 @@
+package net.kaaass.kflight.service;
+
+import net.kaaass.kflight.data.DataLoader;
+import net.kaaass.kflight.data.entry.EntryFlight;
+import net.kaaass.kflight.data.entry.EntryTicketOrder;
+import net.kaaass.kflight.exception.BadRequestException;
+import net.kaaass.kflight.exception.NotFoundException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * 票务服务的单元测试
+ */
+public class TestTicketService {
+
+    @Before
+    public void loadData() throws IOException {
+        FlightService.clear();
+        DataLoader.loadFlightFromJsonResource("/flights.json");
+    }
+
+    private EntryFlight bookingFlight(int id, int rest) {
+        var flight = FlightService.getById(id).orElseThrow();
+        flight.setState(EntryFlight.State.BOOKING);
+        flight.setRestCabin(rest);
+        return flight;
+    }
+
+    private List<EntryTicketOrder> queuedOf(EntryFlight flight) {
+        return TicketService.getTicketsInQueue(flight, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 测试余票充足、不足与退票补票
+     */
+    @Test
+    public void testOrderAndWithdraw() throws Exception {
+        var flight = bookingFlight(0, 2);
+        var a = TicketService.orderTicket(new EntryTicketOrder(flight, "1"));
+        var b = TicketService.orderTicket(new EntryTicketOrder(flight, "2"));
+        var c = TicketService.orderTicket(new EntryTicketOrder(flight, "3"));
+        assertEquals(EntryTicketOrder.State.DONE, a.getState());
+        assertEquals(EntryTicketOrder.State.DONE, b.getState());
+        assertEquals(EntryTicketOrder.State.QUEUED, c.getState());
+        assertEquals(0, flight.getRestCabin());
+        assertEquals(List.of(c), queuedOf(flight));
+
+        TicketService.withdrawTicket(flight, "1");
+        assertEquals(EntryTicketOrder.State.DONE, c.getState());
+        assertEquals(0, flight.getRestCabin());
+        assertTrue(queuedOf(flight).isEmpty());
+        assertEquals(List.of(b, c), flight.getTickets());
+        // 票号不随退票重排
+        assertEquals(Integer.valueOf(1), b.getID());
+        assertEquals(Integer.valueOf(2), c.getID());
+    }
+
+    /**
+     * 测试不同线程并发购票时不超售
+     */
+    @Test
+    public void testConcurrentOrder() throws Exception {
+        int seats = 50, threads = 8, perThread = 20;
+        var flights = new EntryFlight[]{bookingFlight(0, seats), bookingFlight(1, seats)};
+        var orders = Collections.synchronizedList(new ArrayList<EntryTicketOrder>());
+        var start = new CountDownLatch(1);
+        var workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            int tid = t;
+            var worker = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        var flight = flights[(tid + i) % flights.length];
+                        orders.add(TicketService.orderTicket(new EntryTicketOrder(flight, tid + "-" + i)));
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (var worker : workers)
+            worker.join();
+
+        assertEquals(threads * perThread, orders.size());
+        for (var flight : flights) {
+            int total = (int) orders.stream().filter(order -> order.getFlight() == flight).count();
+            assertEquals(0, flight.getRestCabin());
+            assertEquals(seats, flight.getTickets().size());
+            assertEquals(total - seats, queuedOf(flight).size());
+            var ids = flight.getTickets().stream()
+                    .map(EntryTicketOrder::getID)
+                    .sorted()
+                    .collect(Collectors.toList());
+            for (int i = 0; i < seats; i++)
+                assertEquals(Integer.valueOf(i), ids.get(i));
+        }
+    }
+
+    /**
+     * 测试排队队列按航班划分、分页与失效
+     */
+    @Test
+    public void testWaitlistPerFlight() throws Exception {
+        var first = bookingFlight(0, 1);
+        var second = bookingFlight(1, 0);
+        TicketService.orderTicket(new EntryTicketOrder(first, "1"));
+        var queued = new ArrayList<EntryTicketOrder>();
+        for (int i = 0; i < 5; i++)
+            queued.add(TicketService.orderTicket(new EntryTicketOrder(first, "q" + i)));
+        var other = TicketService.orderTicket(new EntryTicketOrder(second, "o"));
+
+        assertEquals(5, TicketService.getQueueSize(first));
+        assertEquals(queued.subList(1, 3), TicketService.getTicketsInQueue(first, 1, 2));
+        assertEquals(List.of(other), queuedOf(second));
+        assertEquals(6, TicketService.getTicketsInQueue().size());
+
+        // 退票仅为本航班补票，且按排队顺序
+        TicketService.withdrawTicket(first, "1");
+        assertEquals(EntryTicketOrder.State.DONE, queued.get(0).getState());
+        assertEquals(queued.subList(1, 5), queuedOf(first));
+        assertEquals(EntryTicketOrder.State.QUEUED, other.getState());
+
+        // 航班停售后放弃排队
+        FlightService.changeState(first.getID(), EntryFlight.State.PREPARE, null);
+        assertEquals(0, TicketService.getQueueSize(first));
+        assertEquals(List.of(other), TicketService.getTicketsInQueue());
+    }
+
+    /**
+     * 测试同一手机号多张机票的退票
+     */
+    @Test
+    public void testWithdrawByPhone() throws Exception {
+        var flight = bookingFlight(0, 10);
+        var orders = new ArrayList<EntryTicketOrder>();
+        for (var phone : List.of("1", "2", "1", "3", "1"))
+            orders.add(TicketService.orderTicket(new EntryTicketOrder(flight, phone)));
+
+        TicketService.withdrawTicket(flight, "1");
+        assertEquals(8, flight.getRestCabin());
+        assertEquals(List.of("2", "3"), flight.getTickets().stream()
+                .map(EntryTicketOrder::getPhone)
+                .sorted()
+                .collect(Collectors.toList()));
+        assertEquals(Integer.valueOf(1), orders.get(1).getID());
+        assertEquals(Integer.valueOf(3), orders.get(3).getID());
+
+        // 再次购票分配新票号
+        var next = TicketService.orderTicket(new EntryTicketOrder(flight, "1"));
+        assertEquals(Integer.valueOf(5), next.getID());
+        TicketService.withdrawTicket(flight, "2");
+        assertEquals(List.of(next), flight.getTicketIndex().findByPhone("1"));
+        try {
+            TicketService.withdrawTicket(flight, "2");
+            fail();
+        } catch (NotFoundException ignored) {
+        }
+    }
+
+    /**
+     * 测试退票与并发购票同时进行时，退回的票只补给排队订单
+     */
+    @Test
+    public void testWithdrawNotJumpedByOrder() throws Exception {
+        var flight = bookingFlight(0, 0);
+        int rounds = 200;
+        var holders = new ArrayList<EntryTicketOrder>();
+        for (int i = 0; i < rounds; i++) {
+            var holder = new EntryTicketOrder(flight, "h" + i);
+            holder.setState(EntryTicketOrder.State.DONE);
+            flight.getTicketIndex().add(holder);
+            holders.add(holder);
+        }
+        var queued = new ArrayList<EntryTicketOrder>();
+        for (int i = 0; i < rounds; i++)
+            queued.add(TicketService.orderTicket(new EntryTicketOrder(flight, "q" + i)));
+        var orders = Collections.synchronizedList(new ArrayList<EntryTicketOrder>());
+        var start = new CountDownLatch(1);
+        var orderer = new Thread(() -> {
+            try {
+                start.await();
+                for (int i = 0; i < rounds * 5; i++)
+                    orders.add(TicketService.orderTicket(new EntryTicketOrder(flight, "n" + i)));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        orderer.start();
+        start.countDown();
+        for (var holder : holders)
+            TicketService.withdrawTicket(flight, holder.getPhone());
+        orderer.join();
+
+        for (var order : queued)
+            assertEquals(EntryTicketOrder.State.DONE, order.getState());
+        for (var order : orders)
+            assertEquals(EntryTicketOrder.State.QUEUED, order.getState());
+        assertEquals(0, flight.getRestCabin());
+        assertEquals(rounds, flight.getTickets().size());
+    }
+
+    /**
+     * 测试批量购票与溢出排队顺序
+     */
+    @Test
+    public void testOrderTickets() throws Exception {
+        var first = bookingFlight(0, 3);
+        var second = bookingFlight(1, 1);
+        var orders = new ArrayList<EntryTicketOrder>();
+        for (int i = 0; i < 5; i++)
+            orders.add(new EntryTicketOrder(i % 2 == 0 ? first : second, "b" + i));
+        for (int i = 5; i < 8; i++)
+            orders.add(new EntryTicketOrder(first, "b" + i));
+        TicketService.orderTickets(orders);
+
+        // first: b0 b2 b4 出票，b5 b6 b7 排队；second: b1 出票，b3 排队
+        assertEquals(0, first.getRestCabin());
+        assertEquals(0, second.getRestCabin());
+        assertEquals(List.of(orders.get(5), orders.get(6), orders.get(7)), queuedOf(first));
+        assertEquals(List.of(orders.get(3)), queuedOf(second));
+        for (int i : new int[]{0, 1, 2, 4})
+            assertEquals(EntryTicketOrder.State.DONE, orders.get(i).getState());
+
+        // 有航班停售时整批拒绝
+        second.setState(EntryFlight.State.PREPARE);
+        var rejected = List.of(new EntryTicketOrder(first, "x"), new EntryTicketOrder(second, "y"));
+        try {
+            TicketService.orderTickets(rejected);
+            fail();
+        } catch (BadRequestException ignored) {
+        }
+        assertEquals(3, queuedOf(first).size());
+    }
+}